@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the day strings DayFormatter caches are the ones Utility used to build from
+    scratch on every call, that they follow the locale, and compares the cost of the two.
+    Benchmark results are written to logcat under the TestDayFormatter tag.
+ */
+public class TestDayFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long TODAY = WeatherContract.normalizeDate(System.currentTimeMillis());
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 100;
+
+    private Locale mSavedLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mSavedLocale);
+        super.tearDown();
+    }
+
+    /*
+        Utility.getFriendlyDayString as it was before its strings were cached.
+     */
+    private String legacyFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today), legacyFormattedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return legacyDayName(dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private String legacyDayName(long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private static String legacyFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+
+    public void testMatchesUncachedStrings() {
+        for (int day = -2; day < DAYS + 2; day++) {
+            long date = TODAY + day * DAY_IN_MILLIS;
+            assertEquals("Error: wrong friendly day for day " + day,
+                    legacyFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals("Error: wrong long friendly day for day " + day,
+                    legacyFriendlyDayString(date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals("Error: wrong day name for day " + day,
+                    legacyDayName(date), Utility.getDayName(mContext, date));
+            assertEquals("Error: wrong month and day for day " + day,
+                    legacyFormattedMonthDay(date), Utility.getFormattedMonthDay(mContext, date));
+            assertEquals("Error: wrong full friendly day for day " + day,
+                    mContext.getString(R.string.format_full_friendly_date, legacyDayName(date),
+                            legacyFormattedMonthDay(date)),
+                    Utility.getFullFriendlyDayString(mContext, date));
+        }
+    }
+
+    public void testStringsAreCached() {
+        long date = TODAY + 10 * DAY_IN_MILLIS;
+        assertSame(Utility.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+        // Any time during the same day hits the same entry.
+        assertSame(Utility.getFormattedMonthDay(mContext, date),
+                Utility.getFormattedMonthDay(mContext, date + 1000 * 60 * 60));
+    }
+
+    public void testLocaleChangeStartsOver() {
+        long date = TODAY + 3 * DAY_IN_MILLIS;
+        Locale.setDefault(Locale.US);
+        assertEquals(new SimpleDateFormat("EEEE", Locale.US).format(date),
+                Utility.getDayName(mContext, date));
+        Locale.setDefault(Locale.FRANCE);
+        assertEquals("Error: day name didn't follow the locale",
+                new SimpleDateFormat("EEEE", Locale.FRANCE).format(date),
+                Utility.getDayName(mContext, date));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testFormatBenchmark() {
+        // Warm up both paths so class loading and the cache don't count.
+        for (int day = 0; day < DAYS; day++) {
+            long date = TODAY + day * DAY_IN_MILLIS;
+            legacyFriendlyDayString(date, day == 0);
+            Utility.getFriendlyDayString(mContext, date, day == 0);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS * DAYS; i++) {
+            int day = i % DAYS;
+            legacyFriendlyDayString(TODAY + day * DAY_IN_MILLIS, day == 0);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        int legacyAllocs = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS * DAYS; i++) {
+            int day = i % DAYS;
+            Utility.getFriendlyDayString(mContext, TODAY + day * DAY_IN_MILLIS, day == 0);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        int cachedAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+
+        int calls = BENCHMARK_ROUNDS * DAYS;
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d friendly day strings: uncached %d us/call, %.1f allocs/call; "
+                        + "cached %d us/call, %.1f allocs/call",
+                calls, legacyNanos / calls / 1000, (float) legacyAllocs / calls,
+                cachedNanos / calls / 1000, (float) cachedAllocs / calls));
+        assertTrue("Error: cached day strings allocated more than formatting them",
+                cachedAllocs < legacyAllocs);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Checks that ForecastAdapter binds the rows it was given already formatted, that a reload
+    after a display change rebinds only the rows that differ, and compares the cost of a bind against
+    formatting the row on the spot, as the adapter used to.  Benchmark results are written to
+    logcat under the TestForecastAdapter tag.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    private static final int ROWS = 14;
+    private static final int BENCHMARK_BINDS = 2000;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Matches the COL_ indices in ForecastFragment.
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_SAVED
+    };
+
+    private static final int[] WEATHER_IDS = {800, 801, 500, 211, 601, 741, 302};
+
+    private String mSavedArtPack;
+    private String mSavedUnits;
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder mHolder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Remote art would hand the bind to Glide, which needs the main thread.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = prefs.getString(artPackKey, null);
+        prefs.edit().putString(artPackKey, mContext.getString(R.string.pref_art_pack_sunshine)).commit();
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = prefs.getString(unitsKey, null);
+        prefs.edit().putString(unitsKey, mContext.getString(R.string.pref_units_metric)).commit();
+        SettingsSnapshot.refresh(mContext);
+
+        mAdapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE);
+        mAdapter.setUseTodayLayout(false);
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item_forecast, null);
+        mHolder = mAdapter.new ForecastAdapterViewHolder(view);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        if (mSavedArtPack == null) {
+            prefs.edit().remove(artPackKey).commit();
+        } else {
+            prefs.edit().putString(artPackKey, mSavedArtPack).commit();
+        }
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        if (mSavedUnits == null) {
+            prefs.edit().remove(unitsKey).commit();
+        } else {
+            prefs.edit().putString(unitsKey, mSavedUnits).commit();
+        }
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    private static Cursor createForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, ROWS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < ROWS; i++) {
+            cursor.addRow(new Object[]{i + 1, today + i * DAY_IN_MILLIS, "Clear", 20.5 + i,
+                    10.5 - i, "99705", WEATHER_IDS[i % WEATHER_IDS.length], 64.7488, -147.353, 0});
+        }
+        return cursor;
+    }
+
+    public void testBindShowsFormattedRow() {
+        Cursor cursor = createForecastCursor();
+        mAdapter.swapCursor(cursor);
+        assertEquals(ROWS, mAdapter.getItemCount());
+
+        for (int position = 0; position < ROWS; position++) {
+            mAdapter.onBindViewHolder(mHolder, position);
+            cursor.moveToPosition(position);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false),
+                    mHolder.mDateView.getText().toString());
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId),
+                    mHolder.mDescriptionView.getText().toString());
+            assertEquals(Utility.formatTemperature(mContext,
+                            cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP)),
+                    mHolder.mHighTempView.getText().toString());
+            assertEquals(Utility.formatTemperature(mContext,
+                            cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP)),
+                    mHolder.mLowTempView.getText().toString());
+        }
+        cursor.close();
+    }
+
+    public void testLoaderCursorItemsAreUsed() {
+        Cursor cursor = createForecastCursor();
+        ForecastItem[] items = ForecastItem.fromCursor(mContext, cursor);
+        assertEquals(-1, cursor.getPosition());
+        mAdapter.swapCursor(new ForecastLoader.ForecastCursor(cursor, items));
+
+        mAdapter.onBindViewHolder(mHolder, 2);
+        // The very same string instances: nothing was formatted during the bind.
+        assertSame(items[2].dateText, mHolder.mDateView.getText());
+        assertSame(items[2].high, mHolder.mHighTempView.getText());
+        cursor.close();
+    }
+
+    /*
+        Hands the adapter what ForecastLoader delivers after a display change: the same rows,
+        formatted again, with their diff against the rows shown.
+     */
+    private void reload(Cursor cursor) {
+        ForecastItem[] items = ForecastItem.fromCursor(mContext, cursor);
+        mAdapter.swapCursor(new ForecastLoader.ForecastCursor(cursor, items,
+                ForecastListDiff.compute(mAdapter.getItems(), items)));
+    }
+
+    public void testDisplayChangeRebindsInPlace() {
+        Cursor cursor = createForecastCursor();
+        mAdapter.swapCursor(new ForecastLoader.ForecastCursor(cursor,
+                ForecastItem.fromCursor(mContext, cursor)));
+        final List<String> events = new ArrayList<String>();
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                events.add("changed");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                events.add("change " + positionStart + " " + itemCount);
+            }
+        });
+
+        // Nothing about the display changed, so nothing is rebound.
+        reload(cursor);
+        assertEquals(new ArrayList<String>(), events);
+
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+        reload(cursor);
+        assertEquals("Error: every row shows a temperature, so every row should be rebound",
+                Arrays.asList("change 0 " + ROWS), events);
+
+        mAdapter.onBindViewHolder(mHolder, 1);
+        cursor.moveToPosition(1);
+        assertEquals(Utility.formatTemperature(mContext,
+                        cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), false),
+                mHolder.mHighTempView.getText().toString());
+        cursor.close();
+    }
+
+    /*
+        Binds the row the way the adapter did before its rows were precomputed.
+     */
+    private void legacyBind(Cursor cursor, int position) {
+        cursor.moveToPosition(position);
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        if (Utility.usingLocalGraphics(mContext)) {
+            mHolder.mIconView.setImageResource(Utility.getIconResourceForWeatherCondition(weatherId));
+        }
+        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        mHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, false));
+        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        mHolder.mDescriptionView.setText(description);
+        mHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        String highString = Utility.formatTemperature(mContext, cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        mHolder.mHighTempView.setText(highString);
+        mHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        String lowString = Utility.formatTemperature(mContext, cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        mHolder.mLowTempView.setText(lowString);
+        mHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testBindBenchmark() {
+        Cursor cursor = createForecastCursor();
+        mAdapter.swapCursor(new ForecastLoader.ForecastCursor(cursor,
+                ForecastItem.fromCursor(mContext, cursor)));
+        // Warm up both paths so class loading and resource caches don't count.
+        for (int i = 0; i < ROWS; i++) {
+            legacyBind(cursor, i);
+            mAdapter.onBindViewHolder(mHolder, i);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            legacyBind(cursor, i % ROWS);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        int legacyAllocs = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            mAdapter.onBindViewHolder(mHolder, i % ROWS);
+        }
+        long bindNanos = System.nanoTime() - start;
+        int bindAllocs = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        cursor.close();
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d binds: formatting in bind %d us/bind, %.1f allocs/bind; "
+                        + "precomputed %d us/bind, %.1f allocs/bind",
+                BENCHMARK_BINDS,
+                legacyNanos / BENCHMARK_BINDS / 1000, (float) legacyAllocs / BENCHMARK_BINDS,
+                bindNanos / BENCHMARK_BINDS / 1000, (float) bindAllocs / BENCHMARK_BINDS));
+        assertTrue("Error: a precomputed bind allocated more than formatting the row",
+                bindAllocs <= legacyAllocs);
+    }
+}
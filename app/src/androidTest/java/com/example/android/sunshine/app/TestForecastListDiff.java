@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that swapping in a reloaded forecast sends ForecastAdapter's observers only the item
+    events for the days that changed, and that a selection follows its day.
+ */
+public class TestForecastListDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long TODAY = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+    // Matches the COL_ indices in ForecastFragment.
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private ForecastAdapter mAdapter;
+    private final List<String> mEvents = new ArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_SINGLE);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mEvents.add("changed");
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mEvents.add("insert " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mEvents.add("remove " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mEvents.add("change " + positionStart + " " + itemCount);
+            }
+        });
+    }
+
+    /*
+        A forecast of the days from firstDay up to, not including, endDay.  Every day's high is
+        20 degrees unless it's listed in warmDays.
+     */
+    private ForecastItem[] createForecast(int firstDay, int endDay, int... warmDays) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day < endDay; day++) {
+            double high = Arrays.binarySearch(warmDays, day) >= 0 ? 30 : 20;
+            cursor.addRow(new Object[]{day + 1, TODAY + day * DAY_IN_MILLIS, "Clear", high,
+                    10, "99705", 800, 64.7488, -147.353});
+        }
+        ForecastItem[] items = ForecastItem.fromCursor(mContext, cursor);
+        cursor.close();
+        return items;
+    }
+
+    /*
+        Swaps in the new forecast the way ForecastLoader delivers it after a reload.
+     */
+    private void reload(ForecastItem[] items) {
+        ForecastListDiff diff = ForecastListDiff.compute(mAdapter.getItems(), items);
+        mEvents.clear();
+        mAdapter.swapCursor(new ForecastLoader.ForecastCursor(new MatrixCursor(COLUMNS), items, diff));
+    }
+
+    public void testUnchangedReloadSendsNothing() {
+        reload(createForecast(0, 14));
+        reload(createForecast(0, 14));
+        assertEquals(new ArrayList<String>(), mEvents);
+    }
+
+    public void testChangedDaysOnly() {
+        reload(createForecast(0, 14));
+        reload(createForecast(0, 14, 3, 4, 9));
+        assertEquals(Arrays.asList("change 3 2", "change 9 1"), mEvents);
+    }
+
+    public void testDayRollsOver() {
+        reload(createForecast(0, 14));
+        reload(createForecast(1, 15));
+        // The new first row switches to the "today" layout, so it's rebound too.
+        assertEquals(Arrays.asList("remove 0 1", "change 0 1", "insert 13 1"), mEvents);
+        assertEquals(14, mAdapter.getItemCount());
+        assertEquals(TODAY + DAY_IN_MILLIS, mAdapter.getItemId(0));
+    }
+
+    public void testForecastShrinksAndGrows() {
+        reload(createForecast(0, 14));
+        reload(createForecast(0, 7));
+        assertEquals(Arrays.asList("remove 7 7"), mEvents);
+        reload(createForecast(0, 14));
+        assertEquals(Arrays.asList("insert 7 7"), mEvents);
+    }
+
+    public void testUnrelatedCursorReplacesEverything() {
+        reload(createForecast(0, 14));
+        mEvents.clear();
+        mAdapter.swapCursor(null);
+        assertEquals(Arrays.asList("changed"), mEvents);
+        assertEquals(0, mAdapter.getItemCount());
+    }
+
+    public void testSelectionFollowsItsDay() {
+        reload(createForecast(0, 14));
+        ItemChoiceManager choices = new ItemChoiceManager(mAdapter);
+        choices.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        choices.mCheckStates.put(5, true);
+        choices.mCheckedIdStates.put(mAdapter.getItemId(5), 5);
+
+        reload(createForecast(2, 16));
+        assertEquals("Error: selection didn't follow its day", 3, choices.getSelectedItemPosition());
+        assertEquals(TODAY + 5 * DAY_IN_MILLIS, mAdapter.getItemId(3));
+
+        reload(createForecast(6, 20));
+        assertEquals("Error: the selected day is gone but still selected",
+                RecyclerView.NO_POSITION, choices.getSelectedItemPosition());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.content.Loader;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.QueryCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that a units change makes ForecastLoader format the rows it already delivered again,
+    with a diff against them, and that nothing reaches the provider to do it.
+ */
+public class TestForecastLoader extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+    private static final int DAYS = 3;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final BlockingQueue<Cursor> mResults = new LinkedBlockingQueue<Cursor>();
+    private ForecastLoader mLoader;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = prefs.getString(unitsKey, null);
+        prefs.edit().putString(unitsKey, mContext.getString(R.string.pref_units_metric)).commit();
+        SettingsSnapshot.refresh(mContext);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long locationRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            day.put(WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+            day.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10 - i);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, day);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mLoader != null) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    mLoader.stopLoading();
+                    mLoader.reset();
+                }
+            });
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        if (mSavedUnits == null) {
+            prefs.edit().remove(unitsKey).commit();
+        } else {
+            prefs.edit().putString(unitsKey, mSavedUnits).commit();
+        }
+        SettingsSnapshot.refresh(mContext);
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Loaders are driven from the main thread, where they also deliver their results.
+     */
+    private void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final BlockingQueue<Boolean> done = new LinkedBlockingQueue<Boolean>();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.add(true);
+            }
+        });
+        assertNotNull(done.poll(5, TimeUnit.SECONDS));
+    }
+
+    private ForecastLoader.ForecastCursor nextResult() throws InterruptedException {
+        Cursor cursor = mResults.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Error: the loader delivered nothing", cursor);
+        assertTrue(cursor instanceof ForecastLoader.ForecastCursor);
+        return (ForecastLoader.ForecastCursor) cursor;
+    }
+
+    private static int queriesSince(Bundle before, Bundle after) {
+        return after.getInt(QueryCache.KEY_HITS) + after.getInt(QueryCache.KEY_MISSES)
+                - before.getInt(QueryCache.KEY_HITS) - before.getInt(QueryCache.KEY_MISSES);
+    }
+
+    public void testDisplayChangeDoesNotQuery() throws Throwable {
+        // Every query of the forecast join is a cache hit or miss, so the counters count them.
+        Bundle before = QueryCache.getStats(mContext.getContentResolver());
+        if (before == null) {
+            return;
+        }
+
+        // Reformat the way ForecastFragment does when the display settings change.
+        final BroadcastReceiver displayChanged = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mLoader.reformat();
+            }
+        };
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TEST_LOCATION,
+                        System.currentTimeMillis());
+                mLoader = new ForecastLoader(mContext, uri, ForecastFragment.FORECAST_COLUMNS,
+                        null, null, WeatherEntry.COLUMN_DATE + " ASC");
+                mLoader.registerListener(0, new Loader.OnLoadCompleteListener<Cursor>() {
+                    @Override
+                    public void onLoadComplete(Loader<Cursor> loader, Cursor data) {
+                        mResults.add(data);
+                    }
+                });
+                mLoader.startLoading();
+                LocalBroadcastManager.getInstance(mContext).registerReceiver(displayChanged,
+                        new IntentFilter(SettingsSnapshot.ACTION_DISPLAY_CHANGED));
+            }
+        });
+        try {
+            ForecastLoader.ForecastCursor metric = nextResult();
+            assertEquals(DAYS, metric.getItems().length);
+            Bundle loaded = QueryCache.getStats(mContext.getContentResolver());
+            assertEquals(1, queriesSince(before, loaded));
+
+            PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                    .putString(mContext.getString(R.string.pref_units_key),
+                            mContext.getString(R.string.pref_units_imperial))
+                    .commit();
+            SettingsSnapshot.refresh(mContext);
+
+            ForecastLoader.ForecastCursor imperial = nextResult();
+            assertEquals("Error: the display change should not have queried the provider",
+                    0, queriesSince(loaded, QueryCache.getStats(mContext.getContentResolver())));
+            assertFalse("Error: the rows shown before should still be readable",
+                    imperial.isClosed());
+            assertEquals(DAYS, imperial.getCount());
+            assertNotNull(imperial.getDiff());
+            for (int i = 0; i < DAYS; i++) {
+                assertEquals(metric.getItems()[i].date, imperial.getItems()[i].date);
+                assertEquals(Utility.formatTemperature(mContext, 20 + i, false),
+                        imperial.getItems()[i].high);
+            }
+        } finally {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    LocalBroadcastManager.getInstance(mContext).unregisterReceiver(displayChanged);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that SettingsSnapshot hands out the same snapshot until a display preference changes,
+    and that a change publishes a new snapshot without touching the old one.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_metric)).commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mSavedUnits == null) {
+            mPrefs.edit().remove(mUnitsKey).commit();
+        } else {
+            mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        }
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    public void testSameSnapshotUntilChanged() {
+        assertSame(SettingsSnapshot.get(mContext), SettingsSnapshot.get(mContext));
+    }
+
+    public void testUnitChangePublishesNewSnapshot() {
+        final SettingsSnapshot metric = SettingsSnapshot.get(mContext);
+        assertTrue(metric.isMetric);
+
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        // The listener runs on the main thread.
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext) != metric;
+            }
+        }.run();
+
+        assertFalse("Error: new snapshot still metric", SettingsSnapshot.get(mContext).isMetric);
+        assertFalse(Utility.isMetric(mContext));
+        assertTrue("Error: published snapshot was modified", metric.isMetric);
+        assertEquals(metric.location, SettingsSnapshot.get(mContext).location);
+    }
+}
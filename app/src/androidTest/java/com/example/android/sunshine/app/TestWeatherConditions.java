@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+
+/*
+    Checks that the condition table in WeatherConditions gives the same answers as the if/else
+    chains Utility used to walk, for every condition code, and compares the cost of the two.
+    Benchmark results are written to logcat under the TestWeatherConditions tag.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    private static final int BENCHMARK_LOOKUPS = 20000;
+    private static final int[] BENCHMARK_IDS = {800, 801, 500, 211, 601, 741, 302, 804, 781, 962};
+
+    private String mArtPackKey;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = prefs.getString(mArtPackKey, null);
+        // An earlier test may have just switched the pack back.
+        waitForArtPack(prefs.getString(mArtPackKey,
+                mContext.getString(R.string.pref_art_pack_sunshine)));
+    }
+
+    /*
+        Change listeners run on the main thread, so the settings snapshot with the new art URLs
+        is published a little after the preference is written.
+     */
+    private void waitForArtPack(String formatArtUrl) {
+        final String expected = String.format(Locale.US, formatArtUrl, "clear");
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return expected.equals(Utility.getArtUrlForWeatherCondition(mContext, 800));
+            }
+        }.run();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        if (mSavedArtPack == null) {
+            prefs.edit().remove(mArtPackKey).commit();
+        } else {
+            prefs.edit().putString(mArtPackKey, mSavedArtPack).commit();
+        }
+        super.tearDown();
+    }
+
+    /*
+        The art name Utility's chains used to format into the art pack URL.
+     */
+    private static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+
+    private static int legacyIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private String legacyArtUrl(int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String formatArtUrl = prefs.getString(mArtPackKey,
+                mContext.getString(R.string.pref_art_pack_sunshine));
+        String name = legacyArtName(weatherId);
+        return name == null ? null : String.format(Locale.US, formatArtUrl, name);
+    }
+
+    /*
+        Every code the old switch named has a condition_<code> string, apart from the 2xx and 3xx
+        ranges which share one.
+     */
+    private String legacyString(int weatherId) {
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else {
+            stringId = mContext.getResources().getIdentifier("condition_" + weatherId, "string",
+                    mContext.getPackageName());
+        }
+        if (stringId == 0) {
+            return mContext.getString(R.string.condition_unknown, weatherId);
+        }
+        return mContext.getString(stringId);
+    }
+
+    public void testTableMatchesChains() {
+        for (int weatherId = -1; weatherId <= 1000; weatherId++) {
+            assertEquals("Error: wrong icon for " + weatherId,
+                    legacyIconResource(weatherId), Utility.getIconResourceForWeatherCondition(weatherId));
+            assertEquals("Error: wrong art URL for " + weatherId,
+                    legacyArtUrl(weatherId), Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+            assertEquals("Error: wrong description for " + weatherId,
+                    legacyString(weatherId), Utility.getStringForWeatherCondition(mContext, weatherId));
+            assertEquals("Error: art and icon disagree for " + weatherId,
+                    Utility.getIconResourceForWeatherCondition(weatherId) == -1,
+                    Utility.getArtResourceForWeatherCondition(weatherId) == -1);
+            assertEquals("Error: photo and icon disagree for " + weatherId,
+                    Utility.getIconResourceForWeatherCondition(weatherId) == -1,
+                    Utility.getImageUrlForWeatherCondition(weatherId) == null);
+        }
+        assertEquals(R.drawable.art_fog, Utility.getArtResourceForWeatherCondition(761));
+        assertEquals(R.drawable.art_storm, Utility.getArtResourceForWeatherCondition(781));
+    }
+
+    public void testArtUrlsFollowArtPack() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String sunshine = mContext.getString(R.string.pref_art_pack_sunshine);
+        prefs.edit().putString(mArtPackKey, sunshine).commit();
+        waitForArtPack(sunshine);
+
+        String cuteDogs = mContext.getString(R.string.pref_art_pack_cute_dogs);
+        prefs.edit().putString(mArtPackKey, cuteDogs).commit();
+        waitForArtPack(cuteDogs);
+        assertEquals(legacyArtUrl(211), Utility.getArtUrlForWeatherCondition(mContext, 211));
+        // Cached: the same instance every time until the pack changes again.
+        assertSame(Utility.getArtUrlForWeatherCondition(mContext, 800),
+                Utility.getArtUrlForWeatherCondition(mContext, 800));
+    }
+
+    public void testLookupBenchmark() {
+        // Warm up both paths so class loading and the URL cache don't count.
+        int sink = 0;
+        for (int weatherId : BENCHMARK_IDS) {
+            sink += legacyIconResource(weatherId) + legacyArtUrl(weatherId).length();
+            sink += Utility.getIconResourceForWeatherCondition(weatherId)
+                    + Utility.getArtUrlForWeatherCondition(mContext, weatherId).length();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+            int weatherId = BENCHMARK_IDS[i % BENCHMARK_IDS.length];
+            sink += legacyIconResource(weatherId);
+            sink += legacyArtUrl(weatherId).length();
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+            int weatherId = BENCHMARK_IDS[i % BENCHMARK_IDS.length];
+            sink += Utility.getIconResourceForWeatherCondition(weatherId);
+            sink += Utility.getArtUrlForWeatherCondition(mContext, weatherId).length();
+        }
+        long tableNanos = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d lookups of icon and art URL: chains %d ns/lookup, table %d ns/lookup (%d)",
+                BENCHMARK_LOOKUPS, legacyNanos / BENCHMARK_LOOKUPS, tableNanos / BENCHMARK_LOOKUPS,
+                sink));
+    }
+}
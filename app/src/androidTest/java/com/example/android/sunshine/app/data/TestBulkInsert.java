@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Checks that the compiled-statement insert paths store the same rows as a plain insert, and
+    times all three against a batch sized for archive and multi-location syncs.  Benchmark
+    results are written to logcat under the TestBulkInsert tag.
+ */
+public class TestBulkInsert extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsert.class.getSimpleName();
+
+    private static final int BENCHMARK_ROWS = 10000;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long START_DATE = 1419033600000L;  // December 20th, 2014
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Values are exact binary fractions so they read back from SQLite as the same strings.
+     */
+    private WeatherBatch createBatch(int numRows) {
+        WeatherBatch batch = new WeatherBatch(numRows);
+        for (int i = 0; i < numRows; i++) {
+            batch.add(mLocationRowId, START_DATE + i * DAY_IN_MILLIS, 321, "Asteroids",
+                    65 - 0.25 * i, 75 + 0.5 * i, 1.25, 1.5 + i, 5.5 + i, 1.125);
+        }
+        return batch;
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testBatchMatchesContentValues() {
+        WeatherBatch batch = createBatch(20);
+        ContentValues[] values = batch.toContentValues();
+
+        assertEquals(20, batch.insert(mContext.getContentResolver()));
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(20, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < values.length; i++, cursor.moveToNext()) {
+            ContentValues expected = new ContentValues(values[i]);
+            expected.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(expected.getAsLong(WeatherEntry.COLUMN_DATE)));
+            TestUtilities.validateCurrentRecord("Error validating batch row " + i, cursor, expected);
+        }
+        cursor.close();
+
+        // The compiled path must not normalize the caller's ContentValues in place.
+        long date = values[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        assertEquals(date, (long) values[0].getAsLong(WeatherEntry.COLUMN_DATE));
+        assertEquals("Error: re-inserting the same days should replace them", 20, countWeatherRows());
+    }
+
+    public void testInvalidRowsAreSkipped() {
+        ContentValues[] values = createBatch(3).toContentValues();
+        values[1].remove(WeatherEntry.COLUMN_SHORT_DESC);
+        assertEquals(2, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values));
+        assertEquals(2, countWeatherRows());
+    }
+
+    public void testBenchmark() {
+        WeatherBatch batch = createBatch(BENCHMARK_ROWS);
+
+        // The pre-existing path: one db.insert per row, normalizing each map.
+        ContentValues[] values = batch.toContentValues();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                value.put(WeatherEntry.COLUMN_DATE,
+                        WeatherContract.normalizeDate(value.getAsLong(WeatherEntry.COLUMN_DATE)));
+                db.insert(WeatherEntry.TABLE_NAME, null, value);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long legacy = System.nanoTime() - start;
+        db.close();
+        assertEquals(BENCHMARK_ROWS, countWeatherRows());
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        values = batch.toContentValues();
+        start = System.nanoTime();
+        int inserted = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        long compiled = System.nanoTime() - start;
+        assertEquals(BENCHMARK_ROWS, inserted);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        start = System.nanoTime();
+        inserted = batch.insert(mContext.getContentResolver());
+        long columnar = System.nanoTime() - start;
+        assertEquals(BENCHMARK_ROWS, inserted);
+        assertEquals(BENCHMARK_ROWS, countWeatherRows());
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d rows: db.insert %d ms, compiled ContentValues %d ms, columnar batch %d ms",
+                BENCHMARK_ROWS, legacy / 1000000, compiled / 1000000, columnar / 1000000));
+    }
+}
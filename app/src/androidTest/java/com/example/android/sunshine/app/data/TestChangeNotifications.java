@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Checks that weather writes notify only the weather/<location> and weather/<location>/<date>
+    URIs they touched, that a batch notifies each of them once, after it commits, and that
+    several days of one location are notified as the location.
+ */
+public class TestChangeNotifications extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "94043";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long DAY_1 = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+    private static final long DAY_2 = WeatherContract.normalizeDate(DAY_1 + DAY_IN_MILLIS);
+
+    // How long to wait for notifications that shouldn't come.
+    private static final long QUIET_MILLIS = 500;
+
+    private long mLocationRowId;
+    private long mOtherLocationRowId;
+    private final ArrayList<CountingObserver> mObservers = new ArrayList<CountingObserver>();
+
+    /*
+        Counts onChange calls on its own thread, as a CursorLoader's observer would receive them.
+     */
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread mThread;
+        final AtomicInteger mChanges = new AtomicInteger();
+
+        CountingObserver(HandlerThread thread) {
+            super(new Handler(thread.getLooper()));
+            mThread = thread;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mChanges.incrementAndGet();
+        }
+
+        int getChanges() {
+            return mChanges.get();
+        }
+
+        void waitForChanges(final int count) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return mChanges.get() >= count;
+                }
+            }.run();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherLocation);
+        mOtherLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (CountingObserver observer : mObservers) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mThread.quit();
+        }
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private CountingObserver observe(Uri uri) {
+        HandlerThread thread = new HandlerThread("CountingObserverThread");
+        thread.start();
+        CountingObserver observer = new CountingObserver(thread);
+        // Loaders register their cursors for descendants too.
+        mContext.getContentResolver().registerContentObserver(uri, true, observer);
+        mObservers.add(observer);
+        return observer;
+    }
+
+    private static ContentValues createDay(long locationRowId, long date) {
+        ContentValues values = TestUtilities.createWeatherValues(locationRowId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        return values;
+    }
+
+    private void insertDay(long locationRowId, long date) {
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, createDay(locationRowId, date));
+    }
+
+    public void testInsertNotifiesOnlyItsDay() {
+        CountingObserver day1 = observe(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, DAY_1));
+        CountingObserver day2 = observe(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, DAY_2));
+        CountingObserver location = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        CountingObserver otherLocation = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+
+        insertDay(mLocationRowId, DAY_1);
+
+        day1.waitForChanges(1);
+        location.waitForChanges(1);
+        SystemClock.sleep(QUIET_MILLIS);
+        assertEquals(1, day1.getChanges());
+        assertEquals(1, location.getChanges());
+        assertEquals("Error: another day of the same location was notified", 0, day2.getChanges());
+        assertEquals("Error: another location was notified", 0, otherLocation.getChanges());
+    }
+
+    public void testBatchNotifiesEachUriOnce() throws Exception {
+        CountingObserver day1 = observe(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, DAY_1));
+        CountingObserver location = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        CountingObserver otherLocation = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+
+        // Write the first day twice and the second once, as overlapping syncs might.
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(createDay(mLocationRowId, DAY_1)).build());
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                                + WeatherEntry.COLUMN_DATE + " = ?",
+                        new String[]{Long.toString(mLocationRowId), Long.toString(DAY_1)})
+                .withValue(WeatherEntry.COLUMN_SHORT_DESC, "Meteors").build());
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(createDay(mLocationRowId, DAY_2)).build());
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        location.waitForChanges(1);
+        SystemClock.sleep(QUIET_MILLIS);
+        assertEquals("Error: a day written twice in one batch was notified twice",
+                1, day1.getChanges());
+        assertEquals("Error: two days of a location should be notified as the location, once",
+                1, location.getChanges());
+        assertEquals("Error: another location was notified", 0, otherLocation.getChanges());
+    }
+
+    public void testFullForecastNotifiesLocationOnce() throws Exception {
+        CountingObserver location = observe(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        CountingObserver lastDay = observe(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, DAY_1 + 13 * DAY_IN_MILLIS));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (int i = 0; i < 14; i++) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(createDay(mLocationRowId, DAY_1 + i * DAY_IN_MILLIS)).build());
+        }
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        location.waitForChanges(1);
+        lastDay.waitForChanges(1);
+        SystemClock.sleep(QUIET_MILLIS);
+        assertEquals("Error: a full forecast should wake the location's observers once",
+                1, location.getChanges());
+        assertEquals("Error: each day's observers should still hear of the change",
+                1, lastDay.getChanges());
+    }
+
+    public void testDeleteNotifiesDeletedDays() {
+        insertDay(mLocationRowId, DAY_1);
+        insertDay(mLocationRowId, DAY_2);
+        insertDay(mOtherLocationRowId, DAY_1);
+
+        CountingObserver day1 = observe(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, DAY_1));
+        CountingObserver day2 = observe(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, DAY_2));
+        CountingObserver otherLocation = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+
+        int deleted = mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(mLocationRowId), Long.toString(DAY_1)});
+        assertEquals(1, deleted);
+
+        day1.waitForChanges(1);
+        SystemClock.sleep(QUIET_MILLIS);
+        assertEquals(0, day2.getChanges());
+        assertEquals("Error: another location was notified", 0, otherLocation.getChanges());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the database runs in WAL mode, so that provider queries don't wait behind a
+    long write transaction, and that the contention counters add up.
+ */
+public class TestDbContention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbContention.class.getSimpleName();
+
+    private static final long WRITE_HOLD_MILLIS = 2000;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mLocationRowId));
+        DbContentionStats.reset(mContext.getContentResolver());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Queries the weather table rather than the location join, which is answered from the
+        provider's query cache and wouldn't reach the database every time.
+     */
+    private int queryWeatherForLocation() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationRowId)}, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: database is not in WAL mode", "wal", cursor.getString(0).toLowerCase());
+        cursor.close();
+        db.close();
+    }
+
+    public void testReadersDoNotWaitForWriter() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        final CountDownLatch writing = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Hold a write transaction open the way a slow sync would.
+                SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    insertDay(db, mLocationRowId, TestUtilities.TEST_DATE + 1);
+                    writing.countDown();
+                    SystemClock.sleep(WRITE_HOLD_MILLIS);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    db.close();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        long start = SystemClock.elapsedRealtime();
+        int count = queryWeatherForLocation();
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        writer.join();
+
+        assertEquals("Error: reader saw an uncommitted row", 1, count);
+        assertTrue("Error: query waited " + elapsed + "ms for the writer",
+                elapsed < WRITE_HOLD_MILLIS / 2);
+        assertEquals(2, queryWeatherForLocation());
+    }
+
+    public void testStatsCountQueries() {
+        Bundle before = DbContentionStats.get(mContext.getContentResolver());
+        if (before == null) {
+            return;
+        }
+        assertEquals(0, before.getInt(DbContentionStats.KEY_QUERIES));
+
+        for (int i = 0; i < 3; i++) {
+            queryWeatherForLocation();
+        }
+        Bundle stats = DbContentionStats.get(mContext.getContentResolver());
+        assertEquals(3, stats.getInt(DbContentionStats.KEY_QUERIES));
+        assertEquals("Error: no write was open, so nothing was contended",
+                0, stats.getInt(DbContentionStats.KEY_CONTENDED_QUERIES));
+        assertTrue(stats.getLong(DbContentionStats.KEY_QUERY_NANOS) > 0);
+        assertTrue(stats.getLong(DbContentionStats.KEY_MAX_QUERY_NANOS)
+                <= stats.getLong(DbContentionStats.KEY_QUERY_NANOS));
+        assertEquals(0, DbContentionStats.getLockWaitMicros(stats));
+        Log.d(LOG_TAG, "3 queries in " + stats.getLong(DbContentionStats.KEY_QUERY_NANOS) / 1000 + "us");
+    }
+
+    /*
+        Inserts a weather row straight into the database, bypassing the provider.
+     */
+    private static void insertDay(SQLiteDatabase db, long locationRowId, long date) {
+        ContentValues values = TestUtilities.createWeatherValues(locationRowId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        db.insert(WeatherEntry.TABLE_NAME, null, values);
+    }
+}
@@ -16,8 +16,10 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -30,6 +32,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -160,6 +164,12 @@ public class TestProvider extends AndroidTestCase {
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/sync_log/
+        type = mContext.getContentResolver().getType(WeatherContract.SyncLogEntry.CONTENT_URI);
+        // vnd.android.cursor.dir/com.example.android.sunshine.app/sync_log
+        assertEquals("Error: the SyncLogEntry CONTENT_URI should return SyncLogEntry.CONTENT_TYPE",
+                WeatherContract.SyncLogEntry.CONTENT_TYPE, type);
     }
 
 
@@ -512,4 +522,78 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Builds the batch a sync sends: a new location, its weather rows referring back to it,
+        and the removal of old days.
+     */
+    private ArrayList<ContentProviderOperation> createSyncBatch(ContentValues[] weatherValues) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues values : weatherValues) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?", new String[]{"0"})
+                .build());
+        return operations;
+    }
+
+    public void testApplyBatch() throws Exception {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        ArrayList<ContentProviderOperation> operations = createSyncBatch(weatherValues);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(LocationEntry.CONTENT_URI, true, locationObserver);
+
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        weatherObserver.waitForNotificationOrFail();
+        locationObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals("Error: weather rows were not linked to the location inserted in the batch",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testApplyBatchIsAtomic() {
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(0);
+        // A row missing a NOT NULL column fails halfway through the batch.
+        weatherValues[weatherValues.length - 1].remove(WeatherEntry.COLUMN_SHORT_DESC);
+        ArrayList<ContentProviderOperation> operations = createSyncBatch(weatherValues);
+
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: batch with an invalid row was applied");
+        } catch (android.database.SQLException | OperationApplicationException expected) {
+        } catch (android.os.RemoteException e) {
+            fail(e.getMessage());
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed batch left its location behind", 0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed batch left some of its weather behind", 0, cursor.getCount());
+        cursor.close();
+    }
 }
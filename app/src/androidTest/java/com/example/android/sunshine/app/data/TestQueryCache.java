@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the provider answers repeated weather/location queries from its cache, and that
+    a write drops the cached results of the location it touched and no others.
+ */
+public class TestQueryCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryCache.class.getSimpleName();
+
+    private static final String OTHER_LOCATION = "94043";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private long mLocationRowId;
+    private long mOtherLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mLocationRowId = insertLocation(TestUtilities.createNorthPoleLocationValues());
+
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mOtherLocationRowId = insertLocation(otherLocation);
+
+        insertDay(mLocationRowId, TestUtilities.TEST_DATE);
+        insertDay(mOtherLocationRowId, TestUtilities.TEST_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertLocation(ContentValues values) {
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private void insertDay(long locationRowId, long date) {
+        ContentValues values = TestUtilities.createWeatherValues(locationRowId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private int countDays(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(locationSetting), null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private Bundle getStats() {
+        return QueryCache.getStats(mContext.getContentResolver());
+    }
+
+    private static int hitsSince(Bundle before, Bundle after) {
+        return after.getInt(QueryCache.KEY_HITS) - before.getInt(QueryCache.KEY_HITS);
+    }
+
+    private static int missesSince(Bundle before, Bundle after) {
+        return after.getInt(QueryCache.KEY_MISSES) - before.getInt(QueryCache.KEY_MISSES);
+    }
+
+    public void testRepeatedQueryIsHit() {
+        Bundle before = getStats();
+        if (before == null) {
+            return;
+        }
+        assertEquals(1, countDays(TestUtilities.TEST_LOCATION));
+        assertEquals(1, countDays(TestUtilities.TEST_LOCATION));
+        assertEquals(1, countDays(TestUtilities.TEST_LOCATION));
+
+        Bundle after = getStats();
+        assertEquals("Error: only the first query should go to the database",
+                1, missesSince(before, after));
+        assertEquals(2, hitsSince(before, after));
+    }
+
+    public void testCachedRowsMatchDatabase() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        ContentValues expected = TestUtilities.createWeatherValues(mLocationRowId);
+        expected.putAll(TestUtilities.createNorthPoleLocationValues());
+        // The provider normalizes the stored date.
+        expected.remove(WeatherEntry.COLUMN_DATE);
+
+        // The first query fills the cache, the second is served from it.
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+            TestUtilities.validateCursor("Error validating query " + i, cursor, expected);
+        }
+    }
+
+    public void testInsertInvalidatesOnlyItsLocation() {
+        Bundle before = getStats();
+        if (before == null) {
+            return;
+        }
+        countDays(TestUtilities.TEST_LOCATION);
+        countDays(OTHER_LOCATION);
+
+        insertDay(mLocationRowId, TestUtilities.TEST_DATE + DAY_IN_MILLIS);
+
+        Bundle afterInsert = getStats();
+        assertEquals("Error: stale result served after an insert",
+                2, countDays(TestUtilities.TEST_LOCATION));
+        assertEquals(1, countDays(OTHER_LOCATION));
+
+        Bundle after = getStats();
+        assertEquals("Error: the written location should be re-queried",
+                1, missesSince(afterInsert, after));
+        assertEquals("Error: the other location should still be cached",
+                1, hitsSince(afterInsert, after));
+    }
+
+    public void testBulkInsertInvalidatesItsLocation() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        assertEquals(1, countDays(TestUtilities.TEST_LOCATION));
+
+        WeatherBatch batch = new WeatherBatch(2);
+        for (int i = 1; i <= 2; i++) {
+            batch.add(mLocationRowId, TestUtilities.TEST_DATE + i * DAY_IN_MILLIS, 321,
+                    "Asteroids", 65, 75, 1.2, 1.3, 5.5, 1.1);
+        }
+        assertEquals(2, batch.insert(mContext.getContentResolver()));
+        assertEquals("Error: stale result served after a bulk insert",
+                3, countDays(TestUtilities.TEST_LOCATION));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationRowId)});
+        assertEquals("Error: stale result served after a delete",
+                0, countDays(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testHitAndMissTiming() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        long start = System.nanoTime();
+        countDays(TestUtilities.TEST_LOCATION);
+        long miss = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        countDays(TestUtilities.TEST_LOCATION);
+        long hit = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, "miss " + miss / 1000 + "us, hit " + hit / 1000 + "us");
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Asserts on EXPLAIN QUERY PLAN for the provider's weather/location joins, so that a schema
+    change can't quietly turn them into full table scans.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    // What the forecast list, widgets and Muzei ask for.
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // What the detail view asks for.
+    private static final String[] DETAIL_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+        long locationRowId = mDb.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        mDb.insert(WeatherEntry.TABLE_NAME, null, TestUtilities.createWeatherValues(locationRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    /*
+        Returns the detail column of every step of the plan.
+     */
+    private List<String> explain(String[] projection, String selection, String[] selectionArgs) {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                projection, selection, null, null, SORT_ORDER, null);
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        List<String> plan = new ArrayList<String>();
+        int detailIndex = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        Log.d(LOG_TAG, sql + " -> " + plan);
+        return plan;
+    }
+
+    private static void assertNoScans(List<String> plan) {
+        for (String step : plan) {
+            assertFalse("Error: full table scan in " + plan, step.startsWith("SCAN"));
+            assertFalse("Error: rows are sorted after the fact in " + plan,
+                    step.contains("TEMP B-TREE"));
+        }
+    }
+
+    private static void assertStep(List<String> plan, String expected) {
+        for (String step : plan) {
+            if (step.contains(expected)) {
+                return;
+            }
+        }
+        fail("Error: expected \"" + expected + "\" in " + plan);
+    }
+
+    public void testWeatherWithLocationPlan() {
+        List<String> plan = explain(LIST_COLUMNS, WeatherProvider.sLocationSettingSelection,
+                new String[]{TestUtilities.TEST_LOCATION});
+        assertNoScans(plan);
+        assertStep(plan, "USING COVERING INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+
+    public void testWeatherWithLocationAndStartDatePlan() {
+        List<String> plan = explain(LIST_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection,
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        assertNoScans(plan);
+        assertStep(plan, "USING COVERING INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+
+    public void testWeatherWithLocationAndDatePlan() {
+        List<String> plan = explain(DETAIL_COLUMNS, WeatherProvider.sLocationSettingAndDaySelection,
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)});
+        assertNoScans(plan);
+        // The detail columns aren't all in the index, but the lookup must still be a seek.
+        assertStep(plan, "INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+    }
+}
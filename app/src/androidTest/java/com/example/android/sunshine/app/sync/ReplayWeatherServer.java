@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    An in-process stand-in for OpenWeatherMap.  It answers every forecast query with a recorded
+    payload, after a configurable delay, so syncs can be tested and benchmarked offline.
+    Locations without a recording of their own get a generated forecast of a configurable
+    number of days.
+ */
+public class ReplayWeatherServer {
+
+    static final String FORECAST_PATH = "/data/2.5/forecast/daily?";
+
+    private final LocalHttpServer mServer;
+    private final Map<String, byte[]> mRecordings = new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong mBytesServed = new AtomicLong();
+    private volatile byte[] mDefaultPayload;
+    private volatile long mLatencyMillis;
+
+    public ReplayWeatherServer() throws IOException {
+        setForecastDays(OpenWeatherMapSource.NUM_DAYS);
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+                String location = Uri.parse(mServer.getUrl(request.path)).getQueryParameter("q");
+                byte[] payload = location != null ? mRecordings.get(location) : null;
+                if (payload == null) {
+                    payload = mDefaultPayload;
+                }
+                if (mLatencyMillis > 0) {
+                    SystemClock.sleep(mLatencyMillis);
+                }
+                mBytesServed.addAndGet(payload.length);
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK, payload);
+            }
+        });
+    }
+
+    /*
+        Replays the given response body for every query of a location.
+     */
+    public void record(String location, byte[] payload) {
+        mRecordings.put(location, payload);
+    }
+
+    /*
+        Sets how long each request waits before the response is sent.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /*
+        Sets the size of the forecast served to locations without a recording.
+     */
+    public void setForecastDays(int numDays) {
+        try {
+            mDefaultPayload = TestForecastJsonParser.createForecastJson(numDays).getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public WeatherSource createSource() {
+        return new OpenWeatherMapSource(mServer.getUrl(FORECAST_PATH));
+    }
+
+    public List<LocalHttpServer.Request> getRequests() {
+        return mServer.getRequests();
+    }
+
+    public long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    public void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+}
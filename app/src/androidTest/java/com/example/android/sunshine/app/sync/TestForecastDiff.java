@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.ByteArrayInputStream;
+
+/*
+    Checks that the diff stage flags exactly the days that are new or differ from the stored
+    rows, using a MatrixCursor in place of the provider.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final int NUM_DAYS = 14;
+
+    private ForecastJsonParser.Forecast mForecast;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mForecast = ForecastJsonParser.parse(new ByteArrayInputStream(
+                TestForecastJsonParser.createForecastJson(NUM_DAYS).getBytes("UTF-8")));
+        Time dayTime = new Time();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), 0);
+        mDates = new long[NUM_DAYS];
+        for (int i = 0; i < NUM_DAYS; i++) {
+            mDates[i] = dayTime.setJulianDay(julianStartDay + i);
+        }
+    }
+
+    /*
+        Builds the rows the provider would hand back after storing the forecast.
+     */
+    private MatrixCursor storedRows(ForecastJsonParser.Forecast forecast, int numDays) {
+        MatrixCursor cursor = new MatrixCursor(ForecastDiff.STORED_PROJECTION);
+        for (int i = 0; i < numDays; i++) {
+            cursor.addRow(new Object[]{
+                    WeatherContract.normalizeDate(mDates[i]),
+                    forecast.humidity[i],
+                    forecast.pressure[i],
+                    forecast.windSpeed[i],
+                    forecast.windDirection[i],
+                    forecast.high[i],
+                    forecast.low[i],
+                    forecast.description[i],
+                    forecast.weatherId[i]
+            });
+        }
+        return cursor;
+    }
+
+    private static int countChanged(boolean[] changed) {
+        int count = 0;
+        for (boolean day : changed) {
+            if (day) count++;
+        }
+        return count;
+    }
+
+    public void testNothingStored() {
+        boolean[] changed = ForecastDiff.findChangedDays(null, mForecast, mDates);
+        assertEquals("Error: with nothing stored every day must be written",
+                NUM_DAYS, countChanged(changed));
+    }
+
+    public void testIdenticalForecast() {
+        boolean[] changed = ForecastDiff.findChangedDays(
+                storedRows(mForecast, NUM_DAYS), mForecast, mDates);
+        assertEquals("Error: an identical forecast should not write anything",
+                0, countChanged(changed));
+    }
+
+    public void testChangedAndNewDays() {
+        MatrixCursor stored = storedRows(mForecast, NUM_DAYS - 1);
+        mForecast.high[3] += 1;
+        mForecast.description[5] = "Snow";
+
+        boolean[] changed = ForecastDiff.findChangedDays(stored, mForecast, mDates);
+        assertEquals(3, countChanged(changed));
+        assertTrue("Error: changed temperature not detected", changed[3]);
+        assertTrue("Error: changed description not detected", changed[5]);
+        assertTrue("Error: day missing from the database not detected", changed[NUM_DAYS - 1]);
+    }
+}
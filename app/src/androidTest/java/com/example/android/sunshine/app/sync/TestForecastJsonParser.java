@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/*
+    Checks that the streaming parser agrees with the original JSONObject parser, and benchmarks
+    the two against 14 and 16 day payloads.  Benchmark results are written to logcat under the
+    TestForecastJsonParser tag.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    /*
+        Builds a response shaped like the OWM daily forecast, including the fields we skip.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"dt\":").append(1419033600L + i * 86400L)
+                    .append(",\"temp\":{\"day\":20.5,\"min\":").append(10 + i * 0.25)
+                    .append(",\"max\":").append(21 + i * 0.5)
+                    .append(",\"night\":11.2,\"eve\":18.3,\"morn\":12.1},")
+                    .append("\"pressure\":").append(1013.25 + i)
+                    .append(",\"humidity\":").append(40 + i)
+                    .append(",\"weather\":[{\"id\":").append(i % 2 == 0 ? 800 : 501)
+                    .append(",\"main\":\"").append(i % 2 == 0 ? "Clear" : "Rain")
+                    .append("\",\"description\":\"sky is clear\",\"icon\":\"01d\"}],")
+                    .append("\"speed\":").append(1.5 + i)
+                    .append(",\"deg\":").append(i * 20)
+                    .append(",\"clouds\":0,\"rain\":0.5}");
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static InputStream streamOf(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    public void testStreamingMatchesJsonObject() throws Throwable {
+        for (int numDays : new int[]{14, 16, 30}) {
+            String json = createForecastJson(numDays);
+            ForecastJsonParser.Forecast streamed = ForecastJsonParser.parseStreaming(streamOf(json));
+            ForecastJsonParser.Forecast legacy = ForecastJsonParser.parseWithJsonObject(streamOf(json));
+
+            assertEquals(HttpURLConnection.HTTP_OK, streamed.code);
+            assertEquals("Mountain View", streamed.cityName);
+            assertEquals(legacy.latitude, streamed.latitude);
+            assertEquals(legacy.longitude, streamed.longitude);
+            assertEquals(numDays, streamed.count);
+            assertEquals(legacy.count, streamed.count);
+            for (int i = 0; i < streamed.count; i++) {
+                String error = "Error: day " + i + " of " + numDays + " differs";
+                assertEquals(error, legacy.pressure[i], streamed.pressure[i]);
+                assertEquals(error, legacy.humidity[i], streamed.humidity[i]);
+                assertEquals(error, legacy.windSpeed[i], streamed.windSpeed[i]);
+                assertEquals(error, legacy.windDirection[i], streamed.windDirection[i]);
+                assertEquals(error, legacy.high[i], streamed.high[i]);
+                assertEquals(error, legacy.low[i], streamed.low[i]);
+                assertEquals(error, legacy.description[i], streamed.description[i]);
+                assertEquals(error, legacy.weatherId[i], streamed.weatherId[i]);
+            }
+        }
+    }
+
+    public void testErrorCode() throws Throwable {
+        String json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                ForecastJsonParser.parseStreaming(streamOf(json)).code);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                ForecastJsonParser.parseWithJsonObject(streamOf(json)).code);
+    }
+
+    public void testMalformedResponse() throws Throwable {
+        String json = createForecastJson(14);
+        try {
+            ForecastJsonParser.parseStreaming(streamOf(json.substring(0, json.length() / 2)));
+            fail("Error: truncated response was accepted");
+        } catch (JSONException | EOFException expected) {
+        }
+        try {
+            ForecastJsonParser.parseStreaming(streamOf(json.replace("\"pressure\"", "\"p\"")));
+            fail("Error: day without a pressure was accepted");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testBenchmark14Days() throws Throwable {
+        benchmark(14);
+    }
+
+    public void testBenchmark16Days() throws Throwable {
+        benchmark(16);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void benchmark(int numDays) throws Throwable {
+        byte[] payload = createForecastJson(numDays).getBytes("UTF-8");
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            ForecastJsonParser.parseStreaming(new ByteArrayInputStream(payload));
+            ForecastJsonParser.parseWithJsonObject(new ByteArrayInputStream(payload));
+        }
+
+        long[] streaming = new long[2];
+        long[] legacy = new long[2];
+        for (int pass = 0; pass < 2; pass++) {
+            boolean useStreaming = pass == 0;
+            System.gc();
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                InputStream in = new ByteArrayInputStream(payload);
+                if (useStreaming) {
+                    ForecastJsonParser.parseStreaming(in);
+                } else {
+                    ForecastJsonParser.parseWithJsonObject(in);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            Debug.stopAllocCounting();
+            long[] result = useStreaming ? streaming : legacy;
+            result[0] = elapsed / BENCHMARK_ITERATIONS;
+            result[1] = Debug.getThreadAllocSize() / BENCHMARK_ITERATIONS;
+        }
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d days, %d bytes: streaming %d us/%d bytes allocated, jsonobject %d us/%d bytes allocated",
+                numDays, payload.length,
+                streaming[0] / 1000, streaming[1],
+                legacy[0] / 1000, legacy[1]));
+    }
+}
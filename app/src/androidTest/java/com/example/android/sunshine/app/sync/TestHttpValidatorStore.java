@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Round trips the stored validators through a local server that behaves like a caching
+    origin: it answers 304 whenever the client already has the current ETag or Last-Modified.
+    The last tests run the whole sync engine and adapter against it.
+ */
+public class TestHttpValidatorStore extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "94043";
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+
+    private LocalHttpServer mServer;
+    private HttpValidatorStore mStore;
+    private volatile String mCurrentEtag = ETAG;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences(HttpValidatorStore.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        mContext.getSharedPreferences(CircuitBreaker.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        deleteAllRecords();
+        mStore = new HttpValidatorStore(mContext);
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) throws IOException {
+                if (mCurrentEtag.equals(request.getHeader("If-None-Match"))) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_NOT_MODIFIED, null);
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                        TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8"))
+                        .header("ETag", mCurrentEtag)
+                        .header("Last-Modified", LAST_MODIFIED);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private int fetch() throws Exception {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(mServer.getUrl("/forecast")).openConnection();
+        try {
+            mStore.applyTo(connection, TEST_LOCATION);
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_OK) {
+                InputStream in = connection.getInputStream();
+                try {
+                    ForecastJsonParser.parse(in);
+                } finally {
+                    in.close();
+                }
+                mStore.save(TEST_LOCATION, connection.getHeaderField("ETag"),
+                        connection.getHeaderField("Last-Modified"));
+            }
+            return code;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public void testFirstFetchSendsNoValidators() throws Throwable {
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        LocalHttpServer.Request request = mServer.getRequests().get(0);
+        assertNull(request.getHeader("If-None-Match"));
+        assertNull(request.getHeader("If-Modified-Since"));
+    }
+
+    public void testUnchangedForecastIsNotModified() throws Throwable {
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, fetch());
+
+        LocalHttpServer.Request request = mServer.getRequests().get(1);
+        assertEquals(ETAG, request.getHeader("If-None-Match"));
+        assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+    }
+
+    public void testChangedForecastIsDownloaded() throws Throwable {
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        mCurrentEtag = "\"forecast-v2\"";
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, fetch());
+    }
+
+    public void testValidatorsArePersisted() throws Throwable {
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        // A new store reads the same preferences, as the next sync would.
+        mStore = new HttpValidatorStore(mContext);
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, fetch());
+    }
+
+    public void testClearForcesFullFetch() throws Throwable {
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+        mStore.clear(TEST_LOCATION);
+        assertEquals(HttpURLConnection.HTTP_OK, fetch());
+    }
+
+    private SyncEngine.LocationResult sync() throws Throwable {
+        SyncEngine engine = new SyncEngine(mContext, mServer.getUrl("/forecast/daily?"));
+        SyncEngine.LocationResult result = engine.fetch(TEST_LOCATION);
+        new SunshineSyncAdapter(mContext, false).storeForecasts(
+                Collections.singletonList(result), new SyncStats());
+        return result;
+    }
+
+    private List<Long> getStoredRowIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(TEST_LOCATION),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "."
+                        + WeatherContract.WeatherEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        List<Long> ids = new ArrayList<Long>();
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    public void testEngineSendsValidatorsOnlyWithStoredForecast() throws Throwable {
+        // Validators left over from rows that are gone can't stand in for them.
+        mStore.save(TEST_LOCATION, ETAG, LAST_MODIFIED);
+        SyncEngine.LocationResult result = sync();
+        assertNull("Error: validators were sent without a stored forecast",
+                mServer.getRequests().get(0).getHeader("If-None-Match"));
+        assertNotNull(result.forecast);
+
+        result = sync();
+        assertEquals("Error: validators should be sent once the forecast is stored",
+                ETAG, mServer.getRequests().get(1).getHeader("If-None-Match"));
+        assertTrue(result.notModified);
+        assertNull(result.forecast);
+    }
+
+    public void testNotModifiedLeavesRowsAlone() throws Throwable {
+        sync();
+        List<Long> before = getStoredRowIds();
+        assertEquals(OpenWeatherMapSource.NUM_DAYS, before.size());
+
+        assertTrue(sync().notModified);
+        assertEquals("Error: a 304 must leave the stored rows as they were",
+                before, getStoredRowIds());
+    }
+
+    public void testNotModifiedStillDeletesPastDays() throws Throwable {
+        sync();
+        long locationId;
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TEST_LOCATION}, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        locationId = cursor.getLong(0);
+        cursor.close();
+
+        ContentValues pastDay = new ContentValues();
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_DATE, 1419033600L);  // December 20th, 2014
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
+        long pastId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.WeatherEntry.CONTENT_URI, pastDay));
+
+        assertTrue(sync().notModified);
+        assertFalse("Error: a day that has passed should roll off even if nothing changed",
+                getStoredRowIds().contains(pastId));
+        assertEquals(OpenWeatherMapSource.NUM_DAYS, getStoredRowIds().size());
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+
+/*
+    Runs the sync engine against a local server that fails on purpose: server errors, reset
+    connections and answers slower than the read timeout.  The first few requests fail and the
+    rest succeed, so each test can check both the retries and what happens after them.
+ */
+public class TestResilientFetch extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+
+    private static final int FAIL_SERVER_ERROR = 0;
+    private static final int FAIL_RESET = 1;
+    private static final int FAIL_SLOW = 2;
+    private static final int FAIL_NOT_FOUND = 3;
+
+    private static final long SLOW_RESPONSE_MILLIS = 2000;
+    private static final int READ_TIMEOUT_MILLIS = 250;
+
+    private LocalHttpServer mServer;
+    private SyncEngine mEngine;
+    private volatile int mFailureMode;
+    private volatile int mFailuresLeft;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearCircuitBreakers();
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) throws IOException {
+                if (mFailuresLeft > 0) {
+                    mFailuresLeft--;
+                    switch (mFailureMode) {
+                        case FAIL_SERVER_ERROR:
+                            return new LocalHttpServer.Response(
+                                    HttpURLConnection.HTTP_UNAVAILABLE, new byte[0]);
+                        case FAIL_RESET:
+                            return null;
+                        case FAIL_SLOW:
+                            SystemClock.sleep(SLOW_RESPONSE_MILLIS);
+                            break;
+                        case FAIL_NOT_FOUND:
+                            return new LocalHttpServer.Response(
+                                    HttpURLConnection.HTTP_NOT_FOUND, new byte[0]);
+                    }
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                        TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8"));
+            }
+        });
+        mEngine = new SyncEngine(mContext, mServer.getUrl("/forecast/daily?"));
+        mEngine.setTimeouts(READ_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+        mEngine.setRetryPolicy(3, 10, 50);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        clearCircuitBreakers();
+        super.tearDown();
+    }
+
+    private void clearCircuitBreakers() {
+        mContext.getSharedPreferences(CircuitBreaker.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    private void failNext(int failureMode, int count) {
+        mFailureMode = failureMode;
+        mFailuresLeft = count;
+    }
+
+    public void testServerErrorIsRetried() {
+        failNext(FAIL_SERVER_ERROR, 2);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+        assertEquals(14, result.forecast.count);
+        assertEquals("Error: both server errors should have been retried", 2, result.retries);
+        assertEquals(3, mServer.getRequests().size());
+
+        SyncStats stats = new SyncStats();
+        stats.addFetches(Collections.singletonList(result));
+        assertEquals("Error: retry count not recorded in the sync log", 2,
+                stats.toContentValues().getAsInteger(SyncLogEntry.COLUMN_RETRIES).intValue());
+    }
+
+    public void testResetGivesUpAfterMaxAttempts() {
+        failNext(FAIL_RESET, Integer.MAX_VALUE);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, result.status);
+        assertNull(result.forecast);
+        assertEquals(2, result.retries);
+        assertEquals("Error: the fetch should stop after its last attempt",
+                3, mServer.getRequests().size());
+    }
+
+    public void testSlowResponseTimesOut() {
+        mEngine.setRetryPolicy(1, 10, 50);
+        failNext(FAIL_SLOW, 1);
+        long start = SystemClock.elapsedRealtime();
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, result.status);
+        assertTrue("Error: the fetch waited " + elapsed + "ms for a server that didn't answer",
+                elapsed < SLOW_RESPONSE_MILLIS);
+    }
+
+    public void testSlowResponseIsRetried() {
+        failNext(FAIL_SLOW, 1);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+        assertEquals(1, result.retries);
+    }
+
+    public void testNotFoundIsNotRetried() {
+        CircuitBreaker breaker = new CircuitBreaker(mContext, "test", 1, 60 * 1000);
+        mEngine.setCircuitBreaker(breaker);
+        failNext(FAIL_NOT_FOUND, Integer.MAX_VALUE);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, result.status);
+        assertEquals(0, result.retries);
+        assertEquals("Error: an unknown location should be asked for once",
+                1, mServer.getRequests().size());
+        assertEquals("Error: an unknown location must not open the circuit",
+                0, breaker.getOpenUntil());
+        assertEquals(0, breaker.getConsecutiveFailures());
+        assertTrue(breaker.allowRequest());
+    }
+
+    public void testRetryDelayGrowsAndIsCapped() {
+        mEngine.setRetryPolicy(10, 100, 1000);
+        for (int retry = 0; retry < 10; retry++) {
+            long cap = Math.min(100L << retry, 1000);
+            long delay = mEngine.getRetryDelayMillis(retry);
+            assertTrue("Error: retry " + retry + " waits " + delay + "ms, expected "
+                    + cap / 2 + " to " + cap, delay >= cap / 2 && delay <= cap);
+        }
+    }
+
+    public void testCircuitOpensAfterRepeatedFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(mContext, "test", 2, 60 * 1000);
+        mEngine.setCircuitBreaker(breaker);
+        mEngine.setRetryPolicy(1, 10, 50);
+        failNext(FAIL_SERVER_ERROR, Integer.MAX_VALUE);
+
+        assertFalse(mEngine.fetch(LOCATION).circuitOpen);
+        assertFalse(mEngine.fetch(LOCATION).circuitOpen);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+
+        assertTrue("Error: the circuit should be open after two failures", result.circuitOpen);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, result.status);
+        assertEquals("Error: an open circuit must not reach the server",
+                2, mServer.getRequests().size());
+        assertTrue(breaker.getOpenUntil() > System.currentTimeMillis());
+
+        // The state outlives the breaker, as it would a process restart.
+        assertFalse(new CircuitBreaker(mContext, "test", 2, 60 * 1000).allowRequest());
+    }
+
+    public void testCircuitClosesAfterSuccessfulTrial() {
+        CircuitBreaker breaker = new CircuitBreaker(mContext, "test", 1, 200);
+        mEngine.setCircuitBreaker(breaker);
+        mEngine.setRetryPolicy(1, 10, 50);
+        failNext(FAIL_SERVER_ERROR, 1);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, mEngine.fetch(LOCATION).status);
+        assertTrue(mEngine.fetch(LOCATION).circuitOpen);
+
+        SystemClock.sleep(300);
+        SyncEngine.LocationResult result = mEngine.fetch(LOCATION);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+        assertEquals("Error: a successful trial should close the circuit", 0, breaker.getOpenUntil());
+        assertEquals(0, breaker.getConsecutiveFailures());
+    }
+
+    public void testFailedTrialReopensCircuitForLonger() {
+        CircuitBreaker breaker = new CircuitBreaker(mContext, "test", 1, 200);
+        mEngine.setCircuitBreaker(breaker);
+        mEngine.setRetryPolicy(1, 10, 50);
+        failNext(FAIL_SERVER_ERROR, Integer.MAX_VALUE);
+
+        mEngine.fetch(LOCATION);
+        SystemClock.sleep(300);
+        long trialStart = System.currentTimeMillis();
+        assertFalse(mEngine.fetch(LOCATION).circuitOpen);
+        assertTrue("Error: a failed trial should reopen the circuit for twice as long",
+                breaker.getOpenUntil() >= trialStart + 400);
+        assertEquals(2, mServer.getRequests().size());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Runs whole syncs against the replay server and logs how long each stage took: fetching,
+    parsing and writing to the provider.  The fan-out to widgets, Muzei and the notification is
+    stubbed, so the benchmark doesn't post to the device it runs on; the sync log has its
+    timings from the field.  The database is emptied before every run so each one writes a full
+    forecast.
+ */
+public class TestSyncBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncBenchmark.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int BENCHMARK_ITERATIONS = 5;
+    private static final long LATENCY_MILLIS = 100;
+
+    private ReplayWeatherServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mContext.getSharedPreferences(CircuitBreaker.PREFS_NAME, 0).edit().clear().commit();
+        mServer = new ReplayWeatherServer();
+        mServer.setLatencyMillis(LATENCY_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testRecordedPayloadIsReplayed() throws Throwable {
+        String location = Utility.getPreferredLocation(mContext);
+        mServer.record(location, TestForecastJsonParser.createForecastJson(3).getBytes("UTF-8"));
+        mServer.setLatencyMillis(0);
+
+        SyncEngine engine = new SyncEngine(mContext, mServer.createSource());
+        List<SyncEngine.LocationResult> results =
+                engine.fetchAll(Arrays.asList(location, "94043"));
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, results.get(0).status);
+        assertEquals("Error: the recording for " + location + " wasn't replayed",
+                3, results.get(0).forecast.count);
+        assertEquals(OpenWeatherMapSource.NUM_DAYS, results.get(1).forecast.count);
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    public void testBenchmarkOneLocation() throws Throwable {
+        benchmark(Arrays.asList(Utility.getPreferredLocation(mContext)));
+    }
+
+    public void testBenchmarkFourLocations() throws Throwable {
+        benchmark(Arrays.asList(Utility.getPreferredLocation(mContext),
+                "10001", "60601", "98101"));
+    }
+
+    private void benchmark(List<String> locations) throws Throwable {
+        final int[] fanOuts = new int[1];
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false) {
+            @Override
+            void fanOut() {
+                fanOuts[0]++;
+            }
+        };
+        SyncEngine engine = new SyncEngine(mContext, mServer.createSource());
+
+        long fetch = 0;
+        long parse = 0;
+        long write = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS + BENCHMARK_ITERATIONS; i++) {
+            deleteAllRecords();
+
+            SyncStats stats = new SyncStats();
+            long start = SystemClock.elapsedRealtime();
+            List<SyncEngine.LocationResult> results = engine.fetchAll(locations);
+            long fetched = SystemClock.elapsedRealtime();
+            stats.addFetches(results);
+            boolean preferredChanged = adapter.storeForecasts(results, stats);
+            long written = SystemClock.elapsedRealtime();
+            if (preferredChanged) {
+                adapter.fanOut();
+            }
+
+            assertTrue("Error: the preferred location's forecast should have been stored",
+                    preferredChanged);
+            assertEquals(i + 1, fanOuts[0]);
+            assertEquals(OpenWeatherMapSource.NUM_DAYS * locations.size(), countWeatherRows());
+            assertEquals(OpenWeatherMapSource.NUM_DAYS * locations.size(), stats.rowsWritten);
+            if (i < WARMUP_ITERATIONS) {
+                continue;
+            }
+            // The locations are parsed concurrently, so the slowest one is what the sync waits on.
+            long slowestParse = 0;
+            for (SyncEngine.LocationResult result : results) {
+                assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+                slowestParse = Math.max(slowestParse, result.parseMillis);
+            }
+            fetch += fetched - start;
+            parse += slowestParse;
+            write += written - fetched;
+        }
+
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "%d locations, %d ms latency, %d bytes per sync: fetch %d ms (parse %d ms),"
+                        + " write %d ms",
+                locations.size(), LATENCY_MILLIS,
+                mServer.getBytesServed() / (WARMUP_ITERATIONS + BENCHMARK_ITERATIONS),
+                fetch / BENCHMARK_ITERATIONS, parse / BENCHMARK_ITERATIONS,
+                write / BENCHMARK_ITERATIONS));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Checks that overlapping syncs of the same location share one fetch, against a local server
+    slow enough for the syncs to overlap.
+ */
+public class TestSyncCoordinator extends AndroidTestCase {
+
+    private static final long SLOW_RESPONSE_MILLIS = 500;
+
+    private LocalHttpServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) throws IOException {
+                SystemClock.sleep(SLOW_RESPONSE_MILLIS);
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                        TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8"));
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Runs a sync of the given locations on another thread, the way a second sync request would.
+     */
+    private static class SyncThread extends Thread {
+        private final SyncEngine mEngine;
+        private final List<String> mLocations;
+        volatile List<SyncEngine.LocationResult> mResults;
+
+        SyncThread(SyncEngine engine, List<String> locations) {
+            mEngine = engine;
+            mLocations = locations;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mResults = mEngine.fetchAll(mLocations);
+            } catch (InterruptedException e) {
+                // mResults stays null and the test fails.
+            }
+        }
+    }
+
+    public void testOverlappingFetchesShareOneRequest() throws Throwable {
+        SyncEngine engine = new SyncEngine(mContext, mServer.getUrl("/forecast/daily?"));
+        int coalescedBefore = SyncCoordinator.getInstance().getCoalescedCount();
+
+        SyncThread first = new SyncThread(engine, Collections.singletonList("30301"));
+        SyncThread second = new SyncThread(engine, Arrays.asList("30301", "30302"));
+        first.start();
+        // Let the first fetch get onto the wire before the second sync starts.
+        SystemClock.sleep(SLOW_RESPONSE_MILLIS / 5);
+        second.start();
+        first.join();
+        second.join();
+
+        assertEquals("Error: the overlapping fetch of 30301 went to the server twice",
+                2, mServer.getRequests().size());
+        assertEquals(1, SyncCoordinator.getInstance().getCoalescedCount() - coalescedBefore);
+        assertSame("Error: the joined fetch should share the first fetch's result",
+                first.mResults.get(0), second.mResults.get(0));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, second.mResults.get(1).status);
+    }
+
+    public void testLaterFetchGoesToServer() throws Throwable {
+        SyncEngine engine = new SyncEngine(mContext, mServer.getUrl("/forecast/daily?"));
+        engine.fetchAll(Collections.singletonList("30303"));
+        engine.fetchAll(Collections.singletonList("30303"));
+        assertEquals("Error: a fetch that had finished must not stand in for a new one",
+                2, mServer.getRequests().size());
+    }
+}
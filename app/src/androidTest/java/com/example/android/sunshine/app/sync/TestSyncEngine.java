@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Runs the sync engine against a local server.  The location query decides how the server
+    answers, so one sync can mix healthy, missing, broken and slow locations.
+ */
+public class TestSyncEngine extends AndroidTestCase {
+
+    private static final long SLOW_RESPONSE_MILLIS = 500;
+
+    private static final String LOCATION_OK = "94043";
+    private static final String LOCATION_NOT_FOUND = "00000";
+    private static final String LOCATION_MALFORMED = "11111";
+    private static final String LOCATION_RESET = "22222";
+
+    private LocalHttpServer mServer;
+    private SyncEngine mEngine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(LocalHttpServer.Request request) throws IOException {
+                String location = Uri.parse(mServer.getUrl(request.path)).getQueryParameter("q");
+                if (LOCATION_NOT_FOUND.equals(location)) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                            "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}".getBytes("UTF-8"));
+                } else if (LOCATION_MALFORMED.equals(location)) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                            "{\"cod\":\"200\",\"list\":[{\"dt\":1419033600}]}".getBytes("UTF-8"));
+                } else if (LOCATION_RESET.equals(location)) {
+                    return null;
+                }
+                SystemClock.sleep(SLOW_RESPONSE_MILLIS);
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK,
+                        TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8"));
+            }
+        });
+        mEngine = new SyncEngine(mContext, mServer.getUrl("/forecast/daily?"));
+        // Retry the reset location quickly, and don't let it trip the circuit for later tests.
+        mEngine.setRetryPolicy(SyncEngine.DEFAULT_MAX_ATTEMPTS, 10, 50);
+        clearCircuitBreakers();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        clearCircuitBreakers();
+        super.tearDown();
+    }
+
+    private void clearCircuitBreakers() {
+        mContext.getSharedPreferences(CircuitBreaker.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private void insertLocation(String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "City " + locationSetting);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mContext.getContentResolver().insert(WeatherContract.LocationEntry.CONTENT_URI, values);
+    }
+
+    public void testSavedLocationsStartWithPreferred() {
+        String preferred = Utility.getPreferredLocation(mContext);
+        insertLocation("12345");
+        insertLocation(preferred);
+        insertLocation("67890");
+        SavedLocationStore saved = new SavedLocationStore(mContext);
+        assertTrue(saved.add("12345"));
+        SystemClock.sleep(5);
+        assertTrue(saved.add(preferred));
+        SystemClock.sleep(5);
+        assertTrue(saved.add("67890"));
+
+        List<String> locations = SyncEngine.getSavedLocations(mContext);
+        assertEquals("Error: preferred location must be synced first", preferred, locations.get(0));
+        assertEquals("Error: every saved location should be synced exactly once",
+                Arrays.asList(preferred, "12345", "67890"), locations);
+    }
+
+    public void testOnlySavedLocationsAreSynced() {
+        String preferred = Utility.getPreferredLocation(mContext);
+        insertLocation("12345");
+        insertLocation("67890");
+        // A location we once held a forecast for isn't synced unless it's saved.
+        insertLocation("55555");
+        SavedLocationStore saved = new SavedLocationStore(mContext);
+        saved.add("12345");
+        saved.add("67890");
+        assertFalse("Error: a location that was never fetched has no row to save",
+                saved.add("11111"));
+
+        saved.remove("12345");
+        List<String> locations = SyncEngine.getSavedLocations(mContext);
+        assertEquals("Error: a removed location should no longer be synced",
+                Arrays.asList(preferred, "67890"), locations);
+        assertFalse(saved.contains("12345"));
+    }
+
+    public void testFailuresAreReportedPerLocation() throws Throwable {
+        List<SyncEngine.LocationResult> results = mEngine.fetchAll(Arrays.asList(
+                LOCATION_OK, LOCATION_NOT_FOUND, LOCATION_MALFORMED, LOCATION_RESET));
+        assertEquals(4, results.size());
+
+        assertEquals(LOCATION_OK, results.get(0).locationSetting);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, results.get(0).status);
+        assertEquals(14, results.get(0).forecast.count);
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, results.get(1).status);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID, results.get(2).status);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, results.get(3).status);
+        for (int i = 1; i < results.size(); i++) {
+            assertNull("Error: failed location should carry no forecast", results.get(i).forecast);
+        }
+    }
+
+    public void testWallTimeFollowsSlowestLocation() throws Throwable {
+        List<String> locations = Arrays.asList("10001", "10002", "10003", "10004");
+        long start = SystemClock.elapsedRealtime();
+        List<SyncEngine.LocationResult> results = mEngine.fetchAll(locations);
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        for (SyncEngine.LocationResult result : results) {
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+            assertTrue("Error: latency not recorded", result.latencyMillis >= SLOW_RESPONSE_MILLIS);
+        }
+        assertTrue("Error: " + locations.size() + " locations took " + elapsed
+                        + "ms, they were not fetched concurrently",
+                elapsed < SLOW_RESPONSE_MILLIS * locations.size());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that a sync's stages are timed and that the runs land in the bounded sync log.
+ */
+public class TestSyncLog extends AndroidTestCase {
+
+    private static final long LATENCY_MILLIS = 200;
+
+    private ReplayWeatherServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mContext.getSharedPreferences(CircuitBreaker.PREFS_NAME, 0).edit().clear().commit();
+        mServer = new ReplayWeatherServer();
+        mServer.setLatencyMillis(LATENCY_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(SyncLogEntry.CONTENT_URI, null, null);
+    }
+
+    public void testStagesAreTimed() throws Throwable {
+        List<String> locations = Arrays.asList(Utility.getPreferredLocation(mContext), "94043");
+        SyncStats stats = new SyncStats();
+        List<SyncEngine.LocationResult> results =
+                new SyncEngine(mContext, mServer.createSource()).fetchAll(locations);
+        stats.addFetches(results);
+        new SunshineSyncAdapter(mContext, false).storeForecasts(results, stats);
+        stats.finish();
+
+        assertEquals(2, stats.locations);
+        assertEquals("Error: the bytes read don't match the bytes served",
+                mServer.getBytesServed(), stats.bytes);
+        assertTrue("Error: the server's latency should show up as time to first byte",
+                stats.firstByteMillis >= LATENCY_MILLIS * locations.size());
+        assertEquals(OpenWeatherMapSource.NUM_DAYS * locations.size(), stats.rowsWritten);
+        assertTrue(stats.durationMillis >= LATENCY_MILLIS);
+    }
+
+    public void testPastDaysAreDeletedInTheBatch() throws Throwable {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.4);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.1);
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues));
+
+        ContentValues pastDay = new ContentValues();
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_DATE, 1419033600L);  // December 20th, 2014
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        pastDay.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI, pastDay);
+
+        SyncStats stats = new SyncStats();
+        List<SyncEngine.LocationResult> results = new SyncEngine(mContext, mServer.createSource())
+                .fetchAll(Arrays.asList("94043"));
+        new SunshineSyncAdapter(mContext, false).storeForecasts(results, stats);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation("94043"), null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals("Error: the day that has passed should be deleted with the new rows",
+                OpenWeatherMapSource.NUM_DAYS, cursor.getCount());
+        cursor.close();
+        assertTrue("Error: the delete is part of the batch, so can't take longer than it",
+                stats.deleteMillis <= stats.writeMillis);
+    }
+
+    public void testRunIsSavedToLog() {
+        SyncStats stats = new SyncStats();
+        stats.locations = 3;
+        stats.bytes = 12345;
+        stats.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        stats.finish();
+        stats.save(mContext);
+
+        Cursor cursor = mContext.getContentResolver().query(SyncLogEntry.CONTENT_URI,
+                null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue("Error: the run wasn't saved to the sync log", cursor.moveToFirst());
+        assertEquals(stats.startTime,
+                cursor.getLong(cursor.getColumnIndex(SyncLogEntry.COLUMN_START_TIME)));
+        assertEquals(3, cursor.getInt(cursor.getColumnIndex(SyncLogEntry.COLUMN_LOCATIONS)));
+        assertEquals(12345, cursor.getLong(cursor.getColumnIndex(SyncLogEntry.COLUMN_BYTES)));
+        cursor.close();
+    }
+
+    public void testLogIsBounded() {
+        for (int i = 0; i < SyncLogEntry.MAX_ROWS + 10; i++) {
+            SyncStats stats = new SyncStats();
+            stats.locations = i;
+            stats.save(mContext);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(SyncLogEntry.CONTENT_URI,
+                new String[]{SyncLogEntry.COLUMN_LOCATIONS}, null, null,
+                SyncLogEntry._ID + " ASC");
+        assertNotNull(cursor);
+        assertEquals("Error: the sync log should keep only the most recent runs",
+                SyncLogEntry.MAX_ROWS, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: the oldest runs should be dropped first", 10, cursor.getInt(0));
+        cursor.close();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, so that networking code can be tested
+ * without leaving the device.  Each connection serves a single request on its own thread and
+ * is then closed, so slow handlers don't hold up concurrent clients.
+ */
+public class LocalHttpServer {
+
+    /**
+     * A request as seen by the server.  Header names are lower cased.
+     */
+    public static class Request {
+        public final String method;
+        public final String path;
+        public final Map<String, String> headers;
+
+        Request(String method, String path, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    public static class Response {
+        public final int code;
+        public final Map<String, String> headers = new LinkedHashMap<String, String>();
+        public final byte[] body;
+
+        public Response(int code, byte[] body) {
+            this.code = code;
+            this.body = body == null ? new byte[0] : body;
+        }
+
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    public interface Handler {
+        Response handle(Request request) throws IOException;
+    }
+
+    private final ServerSocket mServerSocket;
+    private final Handler mHandler;
+    private final List<Request> mRequests = Collections.synchronizedList(new ArrayList<Request>());
+    private final Thread mThread;
+
+    public LocalHttpServer(Handler handler) throws IOException {
+        mHandler = handler;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "LocalHttpServer");
+        mThread.start();
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public List<Request> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<Request>(mRequests);
+        }
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // Closed by shutdown().
+                return;
+            }
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // The client went away; nothing to report.
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            }, "LocalHttpServer-connection").start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        String requestLine = reader.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        String[] parts = requestLine.split(" ");
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        String line;
+        while ((line = reader.readLine()) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        Request request = new Request(parts[0], parts.length > 1 ? parts[1] : "/", headers);
+        mRequests.add(request);
+
+        Response response = mHandler.handle(request);
+        if (response == null) {
+            // Drop the connection without answering, like a reset.
+            return;
+        }
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.code).append(' ')
+                .append(reasonPhrase(response.code)).append("\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(response.body.length).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(head.toString().getBytes("US-ASCII"));
+        out.write(response.body);
+        out.flush();
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 304:
+                return "Not Modified";
+            case 404:
+                return "Not Found";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status";
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the day strings Sunshine shows, caching them by Julian day so that the list, the
+ * widgets and the notifications don't build a new formatter for every row.  What a day is called
+ * depends on today's date, the locale and the time zone, so the cache is dropped whenever any of
+ * those change.  Safe to use from any thread.
+ */
+final class DayFormatter {
+
+    // The strings cached for each day.
+    private static final int FRIENDLY = 0;
+    private static final int FRIENDLY_LONG_TODAY = 1;
+    private static final int DAY_NAME = 2;
+    private static final int MONTH_DAY = 3;
+    private static final int FULL_FRIENDLY = 4;
+    private static final int STRING_COUNT = 5;
+
+    // A forecast is a couple of weeks; past this, the detail screen is wandering the calendar.
+    private static final int MAX_DAYS = 64;
+
+    private static DayFormatter sInstance;
+
+    private final Context mContext;
+    // Everything below is guarded by this.
+    private final SparseArray<String[]> mDays = new SparseArray<String[]>();
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private int mToday;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    private DayFormatter(Context context) {
+        mContext = context;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    static synchronized DayFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DayFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Forgets every cached string and formatter.  Called when the time zone, locale or clock
+     * changes.
+     */
+    synchronized void invalidate() {
+        mDays.clear();
+        mLocale = null;
+        mTimeZone = null;
+    }
+
+    /**
+     * Gets ready to format for the current moment: rolls over to a new day at midnight, and
+     * starts over if the default locale changed under us.
+     */
+    private void checkToday() {
+        Locale locale = Locale.getDefault();
+        if (locale != mLocale || mTimeZone == null) {
+            mDays.clear();
+            mLocale = locale;
+            mTimeZone = TimeZone.getDefault();
+            mDayNameFormat = new SimpleDateFormat("EEEE");
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        }
+        int today = getJulianDay(System.currentTimeMillis());
+        if (today != mToday) {
+            mDays.clear();
+            mToday = today;
+        }
+    }
+
+    // Like Time.getJulianDay with the offset Time.setToNow() would have picked, as the old
+    // helpers in Utility did.
+    private int getJulianDay(long dateInMillis) {
+        long gmtoff = mTimeZone.getOffset(System.currentTimeMillis()) / 1000;
+        return Time.getJulianDay(dateInMillis, gmtoff);
+    }
+
+    private String[] getDay(int julianDay) {
+        String[] strings = mDays.get(julianDay);
+        if (strings == null) {
+            if (mDays.size() >= MAX_DAYS) {
+                mDays.clear();
+            }
+            strings = new String[STRING_COUNT];
+            mDays.put(julianDay, strings);
+        }
+        return strings;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        checkToday();
+        int julianDay = getJulianDay(dateInMillis);
+        // The long form only differs for today.
+        int which = displayLongToday && julianDay == mToday ? FRIENDLY_LONG_TODAY : FRIENDLY;
+        String[] strings = getDay(julianDay);
+        if (strings[which] == null) {
+            if (which == FRIENDLY_LONG_TODAY) {
+                strings[which] = mContext.getString(R.string.format_full_friendly_date,
+                        mContext.getString(R.string.today), getFormattedMonthDay(dateInMillis));
+            } else if (julianDay < mToday + 7) {
+                // If the input date is less than a week in the future, just the day name.
+                strings[which] = getDayName(dateInMillis);
+            } else {
+                // Otherwise, use the form "Mon Jun 3"
+                strings[which] = mShortDateFormat.format(dateInMillis);
+            }
+        }
+        return strings[which];
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    synchronized String getFullFriendlyDayString(long dateInMillis) {
+        checkToday();
+        String[] strings = getDay(getJulianDay(dateInMillis));
+        if (strings[FULL_FRIENDLY] == null) {
+            strings[FULL_FRIENDLY] = mContext.getString(R.string.format_full_friendly_date,
+                    getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+        }
+        return strings[FULL_FRIENDLY];
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    synchronized String getDayName(long dateInMillis) {
+        checkToday();
+        int julianDay = getJulianDay(dateInMillis);
+        String[] strings = getDay(julianDay);
+        if (strings[DAY_NAME] == null) {
+            if (julianDay == mToday) {
+                strings[DAY_NAME] = mContext.getString(R.string.today);
+            } else if (julianDay == mToday + 1) {
+                strings[DAY_NAME] = mContext.getString(R.string.tomorrow);
+            } else {
+                strings[DAY_NAME] = mDayNameFormat.format(dateInMillis);
+            }
+        }
+        return strings[DAY_NAME];
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    synchronized String getFormattedMonthDay(long dateInMillis) {
+        checkToday();
+        String[] strings = getDay(getJulianDay(dateInMillis));
+        if (strings[MONTH_DAY] == null) {
+            strings[MONTH_DAY] = mMonthDayFormat.format(dateInMillis);
+        }
+        return strings[MONTH_DAY];
+    }
+}
@@ -15,8 +15,10 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -24,6 +26,7 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.Toolbar;
@@ -64,6 +67,8 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     private String mForecast;
     private Uri mUri;
+    // The loader's current cursor, kept to format again when the units or art pack change.
+    private Cursor mData;
     private boolean mTransitionAnimation;
 
     private static final int DETAIL_LOADER = 0;
@@ -109,6 +114,15 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private TextView mPressureView;
     private TextView mPressureLabelView;
 
+    private final BroadcastReceiver mDisplayChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (mData != null && !mData.isClosed()) {
+                bindWeather(mData);
+            }
+        }
+    };
+
     public DetailFragment() {
         setHasOptionsMenu(true);
     }
@@ -135,9 +149,17 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mDisplayChangedReceiver,
+                new IntentFilter(SettingsSnapshot.ACTION_DISPLAY_CHANGED));
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mDisplayChangedReceiver);
+        super.onDestroyView();
+    }
+
     private void finishCreatingMenu(Menu menu) {
         // Retrieve the share menu item
         MenuItem menuItem = menu.findItem(R.id.action_share);
@@ -221,8 +243,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         return null;
     }
 
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    /*
+        Shows the day the cursor is on.  Also called again with the same cursor when the units or
+        art pack change, which only affects the formatting.
+     */
+    private void bindWeather(Cursor data) {
 
         int weatherIcon = 0; //Initialize - no image
 
@@ -306,6 +331,12 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                 sendToActivity(lowString, highString, weatherIcon, false);
             }
         }
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mData = data;
+        bindWeather(data);
 
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
@@ -331,5 +362,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) { }
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mData = null;
+    }
 }
\ No newline at end of file
@@ -30,7 +30,6 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -45,6 +44,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // Ready-to-bind rows, one per cursor row.
+    private ForecastItem[] mItems = new ForecastItem[0];
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +74,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mItems[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +87,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are keyed by day, which lets RecyclerView and the ItemChoiceManager follow
+        // them across reloads.  This must be set before anything observes the adapter.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,26 +126,25 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastItem item = mItems[position];
         int defaultImage;
-        boolean useLongToday;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = item.artResource;
+                dateText = item.todayDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = item.iconResource;
+                dateText = item.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( item.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(item.artUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,36 +152,22 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, item.transitionName);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(item.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(item.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(item.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(item.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(item.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(item.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -208,13 +195,41 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItems.length;
+    }
+
+    /**
+     * The weather _ID changes whenever a sync replaces a day, so the date, unique per row, is
+     * what identifies it.
+     */
+    @Override
+    public long getItemId(int position) {
+        return mItems[position].date;
     }
 
+    /**
+     * Swaps in a new cursor.  A {@link ForecastLoader.ForecastCursor} brings its rows already
+     * formatted, and usually the changes from the rows shown now, which are dispatched as item
+     * events so that untouched rows are neither rebound nor laid out again.  Any other cursor is
+     * formatted here, on the calling thread, and replaces the whole list.
+     */
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
-        notifyDataSetChanged();
+        ForecastItem[] oldItems = mItems;
+        ForecastListDiff diff = null;
+        if (newCursor instanceof ForecastLoader.ForecastCursor) {
+            ForecastLoader.ForecastCursor forecastCursor = (ForecastLoader.ForecastCursor) newCursor;
+            mItems = forecastCursor.getItems();
+            diff = forecastCursor.getDiff();
+        } else {
+            mItems = ForecastItem.fromCursor(mContext, newCursor);
+        }
+        // The diff is only good against the rows it was computed from.
+        if (diff != null && diff.getBase() == oldItems) {
+            diff.dispatchTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -222,6 +237,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mCursor;
     }
 
+    ForecastItem[] getItems() {
+        return mItems;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
@@ -17,7 +17,10 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
@@ -28,8 +31,8 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -46,6 +49,7 @@ import android.widget.AbsListView;
 import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SavedLocationStore;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -65,7 +69,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -80,7 +84,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_SAVED
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +99,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_LOCATION_SAVED = 9;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -107,6 +113,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         public void onItemSelected(Uri dateUri, ForecastAdapter.ForecastAdapterViewHolder vh);
     }
 
+    // Units and art pack changes need the rows formatted again, but not queried again.  The
+    // loader reformats the rows it holds off the main thread, and its diff against the rows
+    // shown rebinds only the ones that now differ.
+    private final BroadcastReceiver mDisplayChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+            if (loader instanceof ForecastLoader) {
+                ((ForecastLoader) loader).reformat();
+            }
+        }
+    };
+
     public ForecastFragment() {
     }
 
@@ -136,6 +155,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         inflater.inflate(R.menu.forecastfragment, menu);
     }
 
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        // Only a location that has been fetched can be saved, and its rows say whether it is.
+        MenuItem saveItem = menu.findItem(R.id.action_save_location);
+        if (saveItem != null) {
+            Cursor c = null != mForecastAdapter ? mForecastAdapter.getCursor() : null;
+            boolean fetched = null != c && c.moveToFirst();
+            saveItem.setVisible(fetched);
+            saveItem.setChecked(fetched && c.getLong(COL_LOCATION_SAVED) > 0);
+        }
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Handle action bar item clicks here. The action bar will
@@ -150,6 +182,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             openPreferredLocationInMap();
             return true;
         }
+        if (id == R.id.action_save_location) {
+            setLocationSaved(!item.isChecked());
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -248,9 +284,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
 
+        // Registered for as long as the list exists, so it's up to date when Settings closes.
+        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mDisplayChangedReceiver,
+                new IntentFilter(SettingsSnapshot.ACTION_DISPLAY_CHANGED));
+
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mDisplayChangedReceiver);
+        super.onDestroyView();
+    }
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         // We hold for transition here just in-case the activity
@@ -268,6 +314,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
+    /**
+     * Saves or unsaves the location shown, so it keeps being synced after the user moves on to
+     * another one.  The write changes the location's rows, which reloads them and the menu.
+     */
+    private void setLocationSaved(final boolean saved) {
+        Cursor c = null != mForecastAdapter ? mForecastAdapter.getCursor() : null;
+        if (null == c || !c.moveToFirst()) {
+            return;
+        }
+        final String locationSetting = c.getString(COL_LOCATION_SETTING);
+        final Context context = getActivity().getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SavedLocationStore store = new SavedLocationStore(context);
+                if (saved) {
+                    store.add(locationSetting);
+                } else {
+                    store.remove(locationSetting);
+                }
+            }
+        }).start();
+    }
+
     private void openPreferredLocationInMap() {
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
@@ -316,7 +386,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
@@ -328,6 +398,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        getActivity().supportInvalidateOptionsMenu();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
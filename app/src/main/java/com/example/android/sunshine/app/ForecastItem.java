@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * One row of the forecast list, with every string already formatted, so that binding it to a
+ * view is nothing but field assignments.  Built from the loader's cursor, off the main thread.
+ */
+public class ForecastItem {
+
+    public final long id;
+    public final long date;
+    public final int weatherId;
+    // The temperatures as stored, in Celsius, so the row can be formatted again for new units.
+    public final double maxTemp;
+    public final double minTemp;
+
+    public final String dateText;
+    // The date as the "today" layout shows it, the same as dateText unless this is today.
+    public final String todayDateText;
+
+    public final String description;
+    public final String descriptionA11y;
+    public final String high;
+    public final String highA11y;
+    public final String low;
+    public final String lowA11y;
+
+    public final int iconResource;
+    public final int artResource;
+    // null when the local art pack is in use.
+    public final String artUrl;
+    public final String transitionName;
+
+    private ForecastItem(Context context, Cursor cursor, boolean isMetric, boolean localGraphics,
+            int position) {
+        this(context, cursor.getLong(ForecastFragment.COL_WEATHER_ID),
+                cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                isMetric, localGraphics, position);
+    }
+
+    private ForecastItem(Context context, long id, long date, int weatherId, double maxTemp,
+            double minTemp, boolean isMetric, boolean localGraphics, int position) {
+        this.id = id;
+        this.date = date;
+        this.weatherId = weatherId;
+        this.maxTemp = maxTemp;
+        this.minTemp = minTemp;
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        todayDateText = position == 0 ? Utility.getFriendlyDayString(context, date, true) : dateText;
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        high = Utility.formatTemperature(context, maxTemp, isMetric);
+        highA11y = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context, minTemp, isMetric);
+        lowA11y = context.getString(R.string.a11y_low_temp, low);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  Keyed by day rather than
+        // position, so it stays right when rows shift without being rebound.
+        transitionName = "iconView" + date;
+    }
+
+    /**
+     * @return whether binding {@code other} would show exactly what binding this item does.
+     */
+    public boolean hasSameContent(ForecastItem other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && dateText.equals(other.dateText)
+                && todayDateText.equals(other.todayDateText)
+                && description.equals(other.description)
+                && high.equals(other.high)
+                && low.equals(other.low)
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && (artUrl == null ? other.artUrl == null : artUrl.equals(other.artUrl));
+    }
+
+    /**
+     * Builds a model for every row of a cursor over {@link ForecastFragment}'s columns.  The
+     * preferences are read once for the whole list.  The cursor's position is left unchanged.
+     */
+    public static ForecastItem[] fromCursor(Context context, Cursor cursor) {
+        if (cursor == null) {
+            return new ForecastItem[0];
+        }
+        boolean isMetric = Utility.isMetric(context);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastItem[] items = new ForecastItem[cursor.getCount()];
+        int position = cursor.getPosition();
+        for (int i = 0; i < items.length && cursor.moveToPosition(i); i++) {
+            items[i] = new ForecastItem(context, cursor, isMetric, localGraphics, i);
+        }
+        cursor.moveToPosition(position);
+        return items;
+    }
+
+    /**
+     * Formats rows built earlier again with the current display settings, without going back to
+     * the cursor they came from.
+     */
+    public static ForecastItem[] reformat(Context context, ForecastItem[] items) {
+        boolean isMetric = Utility.isMetric(context);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastItem[] reformatted = new ForecastItem[items.length];
+        for (int i = 0; i < items.length; i++) {
+            ForecastItem item = items[i];
+            reformatted[i] = new ForecastItem(context, item.id, item.date, item.weatherId,
+                    item.maxTemp, item.minTemp, isMetric, localGraphics, i);
+        }
+        return reformatted;
+    }
+}
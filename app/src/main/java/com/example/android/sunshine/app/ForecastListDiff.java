@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The item inserts, removals and changes that turn one forecast list into the next.  Both lists
+ * are sorted by date, one row per day, so a single merge pass over them finds every difference.
+ */
+final class ForecastListDiff {
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_REMOVE = 1;
+    private static final int OP_CHANGE = 2;
+
+    private final ForecastItem[] mBase;
+    // (op, position, count) triples, in the order they must be dispatched.
+    private int[] mOps = new int[3 * 4];
+    private int mOpCount;
+
+    private ForecastListDiff(ForecastItem[] base) {
+        mBase = base;
+    }
+
+    /**
+     * @return the list this diff applies to.
+     */
+    ForecastItem[] getBase() {
+        return mBase;
+    }
+
+    /**
+     * Compares two lists by date.
+     *
+     * @return the diff, or null if either list isn't strictly ordered by date.
+     */
+    static ForecastListDiff compute(ForecastItem[] oldItems, ForecastItem[] newItems) {
+        if (!isSortedByDate(oldItems) || !isSortedByDate(newItems)) {
+            return null;
+        }
+        ForecastListDiff diff = new ForecastListDiff(oldItems);
+        int i = 0;
+        int j = 0;
+        // Where the next operation lands in the list as it is being updated.
+        int position = 0;
+        while (i < oldItems.length || j < newItems.length) {
+            if (j == newItems.length
+                    || (i < oldItems.length && oldItems[i].date < newItems[j].date)) {
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (i == oldItems.length || newItems[j].date < oldItems[i].date) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                // The first row gets its own layout, so a day moving to or from the top is
+                // rebound even if nothing else about it changed.
+                if (!oldItems[i].hasSameContent(newItems[j]) || (i == 0) != (j == 0)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    private static boolean isSortedByDate(ForecastItem[] items) {
+        for (int i = 1; i < items.length; i++) {
+            if (items[i].date <= items[i - 1].date) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends a single-item operation, merging it into the previous one where the two form a
+     * range.
+     */
+    private void add(int op, int position) {
+        if (mOpCount > 0) {
+            int last = 3 * (mOpCount - 1);
+            int lastOp = mOps[last];
+            int lastPosition = mOps[last + 1];
+            int lastCount = mOps[last + 2];
+            // Removals all happen at the same position; inserts and changes advance it.
+            if (op == lastOp && ((op == OP_REMOVE && position == lastPosition)
+                    || (op != OP_REMOVE && position == lastPosition + lastCount))) {
+                mOps[last + 2]++;
+                return;
+            }
+        }
+        if (3 * (mOpCount + 1) > mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[3 * mOpCount] = op;
+        mOps[3 * mOpCount + 1] = position;
+        mOps[3 * mOpCount + 2] = 1;
+        mOpCount++;
+    }
+
+    /**
+     * Sends the operations to an adapter that has just switched from the base list to the new
+     * one.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int k = 0; k < mOpCount; k++) {
+            int position = mOps[3 * k + 1];
+            int count = mOps[3 * k + 2];
+            switch (mOps[3 * k]) {
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+}
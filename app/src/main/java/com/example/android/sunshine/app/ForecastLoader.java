@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A CursorLoader that also formats every row of the forecast into a {@link ForecastItem}, and
+ * works out how the rows differ from the last ones it delivered, while it is still on the
+ * loader's background thread.
+ *
+ * When only the display settings change, {@link #reformat()} formats the delivered rows again
+ * on that same thread and hands them back over the same cursor, without querying.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, carrying the row models built from it.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final Cursor mCursor;
+        private final ForecastItem[] mItems;
+        private final ForecastListDiff mDiff;
+        // Reformatted rows share their cursor with the ones they replace, and only the delivered
+        // one may close it.  Main thread only.
+        private boolean mOwnsCursor;
+
+        ForecastCursor(Cursor cursor, ForecastItem[] items) {
+            this(cursor, items, null);
+        }
+
+        ForecastCursor(Cursor cursor, ForecastItem[] items, ForecastListDiff diff) {
+            this(cursor, items, diff, true);
+        }
+
+        private ForecastCursor(Cursor cursor, ForecastItem[] items, ForecastListDiff diff,
+                boolean ownsCursor) {
+            super(cursor);
+            mCursor = cursor;
+            mItems = items;
+            mDiff = diff;
+            mOwnsCursor = ownsCursor;
+        }
+
+        public ForecastItem[] getItems() {
+            return mItems;
+        }
+
+        /**
+         * @return the changes from the previously delivered rows, or null if unknown.
+         */
+        ForecastListDiff getDiff() {
+            return mDiff;
+        }
+
+        @Override
+        public void close() {
+            if (mOwnsCursor) {
+                super.close();
+            }
+        }
+    }
+
+    // Written on the main thread as results are delivered, read by the next load.
+    private volatile ForecastCursor mDelivered;
+    // Set by reformat(), cleared by any change to the content itself.
+    private volatile boolean mReformatOnly;
+    // Whether the content changed since the last delivered query.  Main thread only.
+    private boolean mQueryPending;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+            String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Formats the delivered rows again for new display settings and delivers them, with their
+     * diff, over the cursor already held.  Must be called on the main thread.
+     */
+    public void reformat() {
+        // A query still to come formats its rows with the new settings anyway.
+        if (!mQueryPending) {
+            mReformatOnly = true;
+        }
+        super.onContentChanged();
+    }
+
+    @Override
+    public void onContentChanged() {
+        // The weather itself changed, so it has to be queried again.
+        mQueryPending = true;
+        mReformatOnly = false;
+        super.onContentChanged();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        ForecastCursor delivered = mDelivered;
+        if (mReformatOnly && delivered != null) {
+            mReformatOnly = false;
+            ForecastItem[] items = ForecastItem.reformat(getContext(), delivered.getItems());
+            return new ForecastCursor(delivered.mCursor, items,
+                    ForecastListDiff.compute(delivered.getItems(), items), false);
+        }
+
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ForecastItem[] items = ForecastItem.fromCursor(getContext(), cursor);
+        ForecastListDiff diff = delivered == null
+                ? null : ForecastListDiff.compute(delivered.getItems(), items);
+        return new ForecastCursor(cursor, items, diff);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset() && cursor instanceof ForecastCursor) {
+            ForecastCursor forecastCursor = (ForecastCursor) cursor;
+            ForecastCursor delivered = mDelivered;
+            if (delivered != null && delivered.mCursor == forecastCursor.mCursor) {
+                // Reformatted rows take over the cursor, so replacing the old ones won't close it.
+                delivered.mOwnsCursor = false;
+                forecastCursor.mOwnsCursor = true;
+            } else {
+                mQueryPending = false;
+            }
+            mDelivered = forecastCursor;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDelivered = null;
+    }
+}
@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  If the adapter
+ * has stable IDs, the selection follows its items through inserts and removals, and is re-found
+ * by ID after a full data set change.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +45,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Granular events say exactly where items went, so there's nothing to search for.
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            shiftCheckedPositions(positionStart, itemCount, -itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +70,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -162,7 +180,8 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            final long lastPosId = lastPos < oldItemCount
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -188,6 +207,32 @@ public class ItemChoiceManager {
         }
     }
 
+    /**
+     * Unchecks the {@code removedCount} positions from {@code positionStart}, and moves every
+     * checked position after them by {@code delta}.
+     */
+    void shiftCheckedPositions(int positionStart, int removedCount, int delta) {
+        SparseBooleanArray checkStates = new SparseBooleanArray(mCheckStates.size());
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (position >= positionStart + removedCount) {
+                checkStates.put(position + delta, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = mCheckedIdStates.valueAt(i);
+            if (position >= positionStart + removedCount) {
+                mCheckedIdStates.setValueAt(i, position + delta);
+            } else if (position >= positionStart) {
+                mCheckedIdStates.removeAt(i);
+            }
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
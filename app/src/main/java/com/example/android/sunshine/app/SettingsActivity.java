@@ -25,8 +25,8 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
-import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncCoordinator;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -135,18 +135,16 @@ public class SettingsActivity extends PreferenceActivity
             // we've changed the location
             // first clear locationStatus
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
-        } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            SyncCoordinator.getInstance().requestLocationSync(this, sharedPreferences.getString(
+                    key, getString(R.string.pref_location_default)));
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
-        } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
+        // Units and art pack changes reach the screens showing weather through
+        // SettingsSnapshot.ACTION_DISPLAY_CHANGED; the stored weather is the same, so there's
+        // no need to notify its observers.
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.v4.content.LocalBroadcastManager;
+
+/**
+ * The settings that decide how weather is displayed, read once and shared by the whole process.
+ * A snapshot never changes; when one of its preferences does, a new snapshot is built and
+ * published in its place, so adapters and widgets can read {@link #get(Context)} on every bind
+ * without touching SharedPreferences or taking a lock.
+ *
+ * When the units or art pack change, {@link #ACTION_DISPLAY_CHANGED} is sent through the
+ * {@link LocalBroadcastManager}.  Screens showing weather format the rows they already hold
+ * again; the weather itself hasn't changed, so there's nothing to query.
+ */
+public final class SettingsSnapshot {
+
+    public static final String ACTION_DISPLAY_CHANGED =
+            "com.example.android.sunshine.app.ACTION_DISPLAY_CHANGED";
+
+    public final String location;
+    public final boolean isMetric;
+    // The art pack preference: a URL format taking the art name.
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+    // The art pack's URLs, by kind of weather.
+    private final String[] mArtUrls;
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sCurrent;
+    // The preferences only keep a weak reference to their listeners.
+    private static Listener sListener;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+        mArtUrls = WeatherConditions.formatArtUrls(artPack);
+    }
+
+    /**
+     * @return the condition's artwork in this snapshot's art pack, or null if there is none.
+     */
+    public String getArtUrl(int weatherId) {
+        return WeatherConditions.getArtUrl(mArtUrls, weatherId);
+    }
+
+    /**
+     * @return the current settings.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot current = sCurrent;
+        if (current == null) {
+            synchronized (sLock) {
+                if (sCurrent == null) {
+                    Context appContext = context.getApplicationContext();
+                    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                    sListener = new Listener(appContext);
+                    prefs.registerOnSharedPreferenceChangeListener(sListener);
+                    sCurrent = new SettingsSnapshot(appContext, prefs);
+                }
+                current = sCurrent;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Rebuilds the snapshot from the preferences straight away.  Change listeners are called on
+     * the main thread, so code that writes a preference from another thread and reads it back
+     * through the snapshot must call this in between.
+     */
+    static void refresh(Context context) {
+        get(context);
+        Context appContext = context.getApplicationContext();
+        publish(appContext, PreferenceManager.getDefaultSharedPreferences(appContext));
+    }
+
+    private static void publish(Context context, SharedPreferences prefs) {
+        SettingsSnapshot previous;
+        SettingsSnapshot current;
+        synchronized (sLock) {
+            previous = sCurrent;
+            current = new SettingsSnapshot(context, prefs);
+            sCurrent = current;
+        }
+        if (previous.isMetric != current.isMetric || !previous.artPack.equals(current.artPack)) {
+            LocalBroadcastManager.getInstance(context)
+                    .sendBroadcast(new Intent(ACTION_DISPLAY_CHANGED));
+        }
+    }
+
+    private static class Listener implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private final Context mContext;
+        private final String mLocationKey;
+        private final String mUnitsKey;
+        private final String mArtPackKey;
+
+        Listener(Context context) {
+            mContext = context;
+            mLocationKey = context.getString(R.string.pref_location_key);
+            mUnitsKey = context.getString(R.string.pref_units_key);
+            mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            if (mLocationKey.equals(key) || mUnitsKey.equals(key) || mArtPackKey.equals(key)) {
+                publish(mContext, prefs);
+            }
+        }
+    }
+}
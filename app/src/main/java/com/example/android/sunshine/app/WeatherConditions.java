@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap condition code, looked up in tables indexed by
+ * the code rather than by walking a chain of ranges.  The tables are built once, when the class
+ * is loaded.  Art URLs depend on the art pack preference, so callers format them once per pack
+ * with {@link #formatArtUrls(String)}; {@link SettingsSnapshot} keeps the current pack's.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    // Condition codes are three digits.
+    private static final int MAX_WEATHER_ID = 999;
+
+    // The kinds of weather Sunshine has artwork for.
+    private static final int STORM = 0;
+    private static final int LIGHT_RAIN = 1;
+    private static final int RAIN = 2;
+    private static final int SNOW = 3;
+    private static final int FOG = 4;
+    // Drawn as a storm, with its own photo.
+    private static final int TORNADO = 5;
+    private static final int CLEAR = 6;
+    private static final int LIGHT_CLOUDS = 7;
+    private static final int CLOUDS = 8;
+    private static final int KIND_COUNT = 9;
+
+    // Indexed by kind.
+    private static final int[] KIND_ICONS = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_storm, R.drawable.ic_clear,
+            R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] KIND_ARTS = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_storm, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+    // Filled into the art pack's URL format.
+    private static final String[] KIND_ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "storm", "clear", "light_clouds", "clouds"
+    };
+    private static final String[] KIND_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // (first code, last code, kind).  761 (dust) falls in the fog range, so only 781 is a
+    // tornado.
+    private static final int[] KIND_RANGES = {
+            200, 232, STORM,
+            300, 321, LIGHT_RAIN,
+            500, 504, RAIN,
+            511, 511, SNOW,
+            520, 531, RAIN,
+            600, 622, SNOW,
+            701, 761, FOG,
+            781, 781, TORNADO,
+            800, 800, CLEAR,
+            801, 801, LIGHT_CLOUDS,
+            802, 804, CLOUDS
+    };
+
+    // (first code, last code, string).
+    private static final int[] STRING_RANGES = {
+            200, 232, R.string.condition_2xx,
+            300, 321, R.string.condition_3xx,
+            500, 500, R.string.condition_500,
+            501, 501, R.string.condition_501,
+            502, 502, R.string.condition_502,
+            503, 503, R.string.condition_503,
+            504, 504, R.string.condition_504,
+            511, 511, R.string.condition_511,
+            520, 520, R.string.condition_520,
+            531, 531, R.string.condition_531,
+            600, 600, R.string.condition_600,
+            601, 601, R.string.condition_601,
+            602, 602, R.string.condition_602,
+            611, 611, R.string.condition_611,
+            612, 612, R.string.condition_612,
+            615, 615, R.string.condition_615,
+            616, 616, R.string.condition_616,
+            620, 620, R.string.condition_620,
+            621, 621, R.string.condition_621,
+            622, 622, R.string.condition_622,
+            701, 701, R.string.condition_701,
+            711, 711, R.string.condition_711,
+            721, 721, R.string.condition_721,
+            731, 731, R.string.condition_731,
+            741, 741, R.string.condition_741,
+            751, 751, R.string.condition_751,
+            761, 761, R.string.condition_761,
+            762, 762, R.string.condition_762,
+            771, 771, R.string.condition_771,
+            781, 781, R.string.condition_781,
+            800, 800, R.string.condition_800,
+            801, 801, R.string.condition_801,
+            802, 802, R.string.condition_802,
+            803, 803, R.string.condition_803,
+            804, 804, R.string.condition_804,
+            900, 900, R.string.condition_900,
+            901, 901, R.string.condition_901,
+            902, 902, R.string.condition_902,
+            903, 903, R.string.condition_903,
+            904, 904, R.string.condition_904,
+            905, 905, R.string.condition_905,
+            906, 906, R.string.condition_906,
+            951, 951, R.string.condition_951,
+            952, 952, R.string.condition_952,
+            953, 953, R.string.condition_953,
+            954, 954, R.string.condition_954,
+            955, 955, R.string.condition_955,
+            956, 956, R.string.condition_956,
+            957, 957, R.string.condition_957,
+            958, 958, R.string.condition_958,
+            959, 959, R.string.condition_959,
+            960, 960, R.string.condition_960,
+            961, 961, R.string.condition_961,
+            962, 962, R.string.condition_962
+    };
+
+    // Indexed by condition code.  -1 for a code with no artwork, 0 for one with no string.
+    private static final byte[] sKinds = new byte[MAX_WEATHER_ID + 1];
+    private static final int[] sStringIds = new int[MAX_WEATHER_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, (byte) -1);
+        for (int i = 0; i < KIND_RANGES.length; i += 3) {
+            for (int id = KIND_RANGES[i]; id <= KIND_RANGES[i + 1]; id++) {
+                sKinds[id] = (byte) KIND_RANGES[i + 2];
+            }
+        }
+        for (int i = 0; i < STRING_RANGES.length; i += 3) {
+            for (int id = STRING_RANGES[i]; id <= STRING_RANGES[i + 1]; id++) {
+                sStringIds[id] = STRING_RANGES[i + 2];
+            }
+        }
+    }
+
+    private static int getKind(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return -1;
+        }
+        return sKinds[weatherId];
+    }
+
+    /**
+     * @return the icon resource for the condition, or -1 if there is none.
+     */
+    static int getIconResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind < 0 ? -1 : KIND_ICONS[kind];
+    }
+
+    /**
+     * @return the art resource for the condition, or -1 if there is none.
+     */
+    static int getArtResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind < 0 ? -1 : KIND_ARTS[kind];
+    }
+
+    /**
+     * @return the photo for the condition, or null if there is none.
+     */
+    static String getImageUrl(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind < 0 ? null : KIND_IMAGE_URLS[kind];
+    }
+
+    /**
+     * @return the description's string resource for the condition, or 0 if there is none.
+     */
+    static int getStringResource(int weatherId) {
+        if (weatherId < 0 || weatherId > MAX_WEATHER_ID) {
+            return 0;
+        }
+        return sStringIds[weatherId];
+    }
+
+    /**
+     * Formats the artwork of every kind of weather in an art pack.
+     *
+     * @param formatArtUrl the art pack preference, a URL format taking the art name
+     * @return the URLs to pass to {@link #getArtUrl(String[], int)}
+     */
+    static String[] formatArtUrls(String formatArtUrl) {
+        String[] urls = new String[KIND_COUNT];
+        for (int kind = 0; kind < KIND_COUNT; kind++) {
+            urls[kind] = String.format(Locale.US, formatArtUrl, KIND_ART_NAMES[kind]);
+        }
+        return urls;
+    }
+
+    /**
+     * @param artUrls an art pack's URLs, from {@link #formatArtUrls(String)}
+     * @return the condition's artwork in that art pack, or null if there is none.
+     */
+    static String getArtUrl(String[] artUrls, int weatherId) {
+        int kind = getKind(weatherId);
+        return kind < 0 ? null : artUrls[kind];
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long provider queries take, split by whether a write transaction was open at
+ * the time.  SQLite doesn't report how long a reader waited for its lock, so the wait is
+ * estimated as the extra time a query takes while a write is in progress.  In WAL mode the two
+ * should be about the same.
+ */
+public class DbContentionStats implements SQLiteTransactionListener {
+
+    static final String METHOD_GET = "getDbContentionStats";
+    static final String METHOD_RESET = "resetDbContentionStats";
+
+    public static final String KEY_QUERIES = "queries";
+    public static final String KEY_QUERY_NANOS = "query_nanos";
+    public static final String KEY_CONTENDED_QUERIES = "contended_queries";
+    public static final String KEY_CONTENDED_QUERY_NANOS = "contended_query_nanos";
+    public static final String KEY_MAX_QUERY_NANOS = "max_query_nanos";
+
+    private final AtomicInteger mOpenWrites = new AtomicInteger();
+
+    private int mQueries;
+    private long mQueryNanos;
+    private int mContendedQueries;
+    private long mContendedQueryNanos;
+    private long mMaxQueryNanos;
+
+    boolean isWriting() {
+        return mOpenWrites.get() > 0;
+    }
+
+    @Override
+    public void onBegin() {
+        mOpenWrites.incrementAndGet();
+    }
+
+    @Override
+    public void onCommit() {
+        mOpenWrites.decrementAndGet();
+    }
+
+    @Override
+    public void onRollback() {
+        mOpenWrites.decrementAndGet();
+    }
+
+    /**
+     * @param nanos how long the query took to run and fill its first window
+     * @param contended whether a write transaction was open at any point during the query
+     */
+    synchronized void recordQuery(long nanos, boolean contended) {
+        mQueries++;
+        mQueryNanos += nanos;
+        if (contended) {
+            mContendedQueries++;
+            mContendedQueryNanos += nanos;
+        }
+        mMaxQueryNanos = Math.max(mMaxQueryNanos, nanos);
+    }
+
+    synchronized Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_QUERIES, mQueries);
+        bundle.putLong(KEY_QUERY_NANOS, mQueryNanos);
+        bundle.putInt(KEY_CONTENDED_QUERIES, mContendedQueries);
+        bundle.putLong(KEY_CONTENDED_QUERY_NANOS, mContendedQueryNanos);
+        bundle.putLong(KEY_MAX_QUERY_NANOS, mMaxQueryNanos);
+        return bundle;
+    }
+
+    synchronized void reset() {
+        mQueries = 0;
+        mQueryNanos = 0;
+        mContendedQueries = 0;
+        mContendedQueryNanos = 0;
+        mMaxQueryNanos = 0;
+    }
+
+    /**
+     * Reads the weather provider's counters.
+     *
+     * @return the counters under the KEY_ constants, or null before Honeycomb.
+     */
+    public static Bundle get(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return null;
+        }
+        return resolver.call(WeatherContract.BASE_CONTENT_URI, METHOD_GET, null, null);
+    }
+
+    public static void reset(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            resolver.call(WeatherContract.BASE_CONTENT_URI, METHOD_RESET, null, null);
+        }
+    }
+
+    /**
+     * Estimates the mean time a query spent waiting for the database lock: the mean time of a
+     * query during a write, less the mean time of one without.
+     *
+     * @param stats counters as returned by {@link #get}
+     * @return the estimate in microseconds, 0 if nothing was contended.
+     */
+    public static long getLockWaitMicros(Bundle stats) {
+        int contended = stats.getInt(KEY_CONTENDED_QUERIES);
+        int uncontended = stats.getInt(KEY_QUERIES) - contended;
+        if (contended == 0 || uncontended == 0) {
+            return 0;
+        }
+        long contendedNanos = stats.getLong(KEY_CONTENDED_QUERY_NANOS);
+        long uncontendedNanos = stats.getLong(KEY_QUERY_NANOS) - contendedNanos;
+        long waitNanos = contendedNanos / contended - uncontendedNanos / uncontended;
+        return Math.max(0, waitNanos / 1000);
+    }
+}
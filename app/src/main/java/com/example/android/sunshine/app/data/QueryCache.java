@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small LRU cache of weather query results, held as row snapshots and handed out as a fresh
+ * MatrixCursor on every hit.  Entries are tagged with their location setting so a write can
+ * drop exactly the locations it touched.
+ */
+public class QueryCache {
+
+    static final String METHOD_GET_STATS = "getQueryCacheStats";
+
+    public static final String KEY_HITS = "hits";
+    public static final String KEY_MISSES = "misses";
+    public static final String KEY_SIZE = "size";
+
+    private static final int MAX_ENTRIES = 32;
+    // Anything bigger than a few weeks of forecast isn't worth holding on to.
+    static final int MAX_ROWS = 256;
+
+    private static class Entry {
+        final String locationSetting;
+        final String[] columns;
+        final Object[][] rows;
+
+        Entry(String locationSetting, String[] columns, Object[][] rows) {
+            this.locationSetting = locationSetting;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Bumped by every invalidation, so a query that raced with a write isn't cached.
+    private long mGeneration;
+    private int mHits;
+    private int mMisses;
+
+    static String key(int match, Uri uri, String[] projection, String sortOrder) {
+        return match + "|" + uri + "|" + Arrays.toString(projection) + "|" + sortOrder;
+    }
+
+    /**
+     * @return a new cursor over the cached rows, or null on a miss.
+     */
+    synchronized Cursor get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        MatrixCursor cursor = new MatrixCursor(entry.columns, entry.rows.length);
+        for (Object[] row : entry.rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Snapshots a query result, leaving the cursor before its first row.  Nothing is stored if
+     * the result is too large or the cache was invalidated since {@code generation}.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    void put(String key, String locationSetting, Cursor cursor, long generation) {
+        int count = cursor.getCount();
+        if (count > MAX_ROWS) {
+            return;
+        }
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[count][];
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[column] = cursor.getString(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        row[column] = null;
+                }
+            }
+            rows[i] = row;
+        }
+        cursor.moveToPosition(-1);
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, new Entry(locationSetting, columns, rows));
+            }
+        }
+    }
+
+    synchronized void invalidate(Collection<String> locationSettings) {
+        mGeneration++;
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            if (locationSettings.contains(entries.next().locationSetting)) {
+                entries.remove();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    synchronized Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putInt(KEY_HITS, mHits);
+        stats.putInt(KEY_MISSES, mMisses);
+        stats.putInt(KEY_SIZE, mEntries.size());
+        return stats;
+    }
+
+    /**
+     * Reads the weather provider's cache counters.
+     *
+     * @return the counters under the KEY_ constants, or null before Honeycomb, where the cache
+     * is not used.
+     */
+    public static Bundle getStats(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return null;
+        }
+        return resolver.call(WeatherContract.BASE_CONTENT_URI, METHOD_GET_STATS, null, null);
+    }
+}
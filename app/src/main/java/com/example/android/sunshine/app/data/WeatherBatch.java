@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * A batch of weather rows held column by column in primitive arrays.  Compared with an array
+ * of ContentValues there is no boxing and no map per row, and the provider binds the columns
+ * straight into a compiled insert statement.
+ */
+public class WeatherBatch {
+
+    static final String METHOD_BULK_INSERT = "bulkInsertWeatherBatch";
+    static final String RESULT_COUNT = "count";
+
+    private static final String KEY_SIZE = "size";
+    private static final int DEFAULT_CAPACITY = 16;
+
+    int size;
+    long[] locationId;
+    long[] date;
+    int[] weatherId;
+    String[] shortDesc;
+    double[] minTemp;
+    double[] maxTemp;
+    double[] humidity;
+    double[] pressure;
+    double[] windSpeed;
+    double[] degrees;
+
+    public WeatherBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WeatherBatch(int capacity) {
+        locationId = new long[capacity];
+        date = new long[capacity];
+        weatherId = new int[capacity];
+        shortDesc = new String[capacity];
+        minTemp = new double[capacity];
+        maxTemp = new double[capacity];
+        humidity = new double[capacity];
+        pressure = new double[capacity];
+        windSpeed = new double[capacity];
+        degrees = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a row.  The date is normalized by the provider, as with any other insert.
+     */
+    public WeatherBatch add(long locationId, long date, int weatherId, String shortDesc,
+            double minTemp, double maxTemp, double humidity, double pressure,
+            double windSpeed, double degrees) {
+        if (size == this.date.length) {
+            grow(Math.max(DEFAULT_CAPACITY, size * 2));
+        }
+        this.locationId[size] = locationId;
+        this.date[size] = date;
+        this.weatherId[size] = weatherId;
+        this.shortDesc[size] = shortDesc;
+        this.minTemp[size] = minTemp;
+        this.maxTemp[size] = maxTemp;
+        this.humidity[size] = humidity;
+        this.pressure[size] = pressure;
+        this.windSpeed[size] = windSpeed;
+        this.degrees[size] = degrees;
+        size++;
+        return this;
+    }
+
+    private void grow(int capacity) {
+        locationId = Arrays.copyOf(locationId, capacity);
+        date = Arrays.copyOf(date, capacity);
+        weatherId = Arrays.copyOf(weatherId, capacity);
+        shortDesc = Arrays.copyOf(shortDesc, capacity);
+        minTemp = Arrays.copyOf(minTemp, capacity);
+        maxTemp = Arrays.copyOf(maxTemp, capacity);
+        humidity = Arrays.copyOf(humidity, capacity);
+        pressure = Arrays.copyOf(pressure, capacity);
+        windSpeed = Arrays.copyOf(windSpeed, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+    }
+
+    /**
+     * Inserts the batch through the weather provider in a single transaction.
+     *
+     * @return the number of rows inserted.
+     */
+    public int insert(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle result = resolver.call(WeatherEntry.CONTENT_URI, METHOD_BULK_INSERT, null,
+                    toBundle());
+            return result == null ? 0 : result.getInt(RESULT_COUNT);
+        }
+        // ContentResolver.call is not available, so go the long way round.
+        return resolver.bulkInsert(WeatherEntry.CONTENT_URI, toContentValues());
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, size);
+        bundle.putLongArray(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        bundle.putLongArray(WeatherEntry.COLUMN_DATE, date);
+        bundle.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        bundle.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, shortDesc);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, minTemp);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_HUMIDITY, humidity);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_PRESSURE, pressure);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        bundle.putDoubleArray(WeatherEntry.COLUMN_DEGREES, degrees);
+        return bundle;
+    }
+
+    static WeatherBatch fromBundle(Bundle bundle) {
+        WeatherBatch batch = new WeatherBatch(0);
+        batch.size = bundle.getInt(KEY_SIZE);
+        batch.locationId = bundle.getLongArray(WeatherEntry.COLUMN_LOC_KEY);
+        batch.date = bundle.getLongArray(WeatherEntry.COLUMN_DATE);
+        batch.weatherId = bundle.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        batch.shortDesc = bundle.getStringArray(WeatherEntry.COLUMN_SHORT_DESC);
+        batch.minTemp = bundle.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP);
+        batch.maxTemp = bundle.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP);
+        batch.humidity = bundle.getDoubleArray(WeatherEntry.COLUMN_HUMIDITY);
+        batch.pressure = bundle.getDoubleArray(WeatherEntry.COLUMN_PRESSURE);
+        batch.windSpeed = bundle.getDoubleArray(WeatherEntry.COLUMN_WIND_SPEED);
+        batch.degrees = bundle.getDoubleArray(WeatherEntry.COLUMN_DEGREES);
+        return batch;
+    }
+
+    ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[size];
+        for (int i = 0; i < size; i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_LOC_KEY, locationId[i]);
+            row.put(WeatherEntry.COLUMN_DATE, date[i]);
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId[i]);
+            row.put(WeatherEntry.COLUMN_SHORT_DESC, shortDesc[i]);
+            row.put(WeatherEntry.COLUMN_MIN_TEMP, minTemp[i]);
+            row.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp[i]);
+            row.put(WeatherEntry.COLUMN_HUMIDITY, humidity[i]);
+            row.put(WeatherEntry.COLUMN_PRESSURE, pressure[i]);
+            row.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed[i]);
+            row.put(WeatherEntry.COLUMN_DEGREES, degrees[i]);
+            values[i] = row;
+        }
+        return values;
+    }
+}
@@ -43,6 +43,7 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_LOG = "sync_log";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -81,6 +82,10 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // When the user saved the location to be synced along with the preferred one, in
+        // milliseconds since the epoch, or 0 if it isn't saved.
+        public static final String COLUMN_SAVED = "saved";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -165,4 +170,47 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the sync log table */
+    public static final class SyncLogEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_LOG).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_LOG;
+
+        public static final String TABLE_NAME = "sync_log";
+
+        // Only the most recent runs are kept; inserting a row drops the oldest beyond this.
+        public static final int MAX_ROWS = 500;
+
+        // When the sync started, stored as long in milliseconds since the epoch
+        public static final String COLUMN_START_TIME = "start_time";
+        // Wall time of the whole sync in milliseconds
+        public static final String COLUMN_DURATION = "duration";
+        // Number of locations fetched
+        public static final String COLUMN_LOCATIONS = "locations";
+        // LocationStatus of the preferred location, as set by the sync adapter
+        public static final String COLUMN_STATUS = "status";
+        // Retries of all fetches
+        public static final String COLUMN_RETRIES = "retries";
+
+        // The fetch stages, in milliseconds, summed over every location.  The response is parsed
+        // as it downloads, so parse includes the transfer of all but its first bytes.
+        public static final String COLUMN_CONNECT = "connect";
+        public static final String COLUMN_FIRST_BYTE = "first_byte";
+        public static final String COLUMN_PARSE = "parse";
+        // Response bytes read, summed over every location
+        public static final String COLUMN_BYTES = "bytes";
+
+        // The stages after the fetch, in milliseconds.  Write is the whole batch, which also
+        // deletes the days that have passed; delete_old is the part of it spent on that.
+        public static final String COLUMN_WRITE = "write";
+        public static final String COLUMN_DELETE = "delete_old";
+        // Widgets, Muzei and the notification
+        public static final String COLUMN_FAN_OUT = "fan_out";
+        // Weather rows written
+        public static final String COLUMN_ROWS = "rows";
+    }
 }
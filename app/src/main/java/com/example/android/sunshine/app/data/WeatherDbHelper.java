@@ -15,11 +15,14 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,12 +31,72 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 5;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves the joins in WeatherProvider once location_setting has resolved the location_id:
+    // weather/<location> seeks (location_id, date >= ?) and weather/<location>/<date> seeks
+    // (location_id, date = ?), both already in date order.  The list columns ride along so the
+    // forecast list, widgets and Muzei never touch the table itself; the detail view does one
+    // row lookup for the rest.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX " + INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ");";
+
+    // One row per sync run, newest last.
+    private static final String SQL_CREATE_SYNC_LOG_TABLE =
+            "CREATE TABLE " + SyncLogEntry.TABLE_NAME + " (" +
+                    SyncLogEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    SyncLogEntry.COLUMN_START_TIME + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_DURATION + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_LOCATIONS + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_STATUS + " INTEGER NOT NULL, " +
+                    SyncLogEntry.COLUMN_RETRIES + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_CONNECT + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_FIRST_BYTE + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_PARSE + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_BYTES + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_WRITE + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_DELETE + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_FAN_OUT + " INTEGER NOT NULL DEFAULT 0, " +
+                    SyncLogEntry.COLUMN_ROWS + " INTEGER NOT NULL DEFAULT 0);";
+
+    private static final String SQL_ADD_LOCATION_SAVED =
+            "ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_SAVED + " INTEGER NOT NULL DEFAULT 0;";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // In write-ahead-log mode the UI, widgets and Muzei read from their own connections
+        // against the last commit, instead of waiting for the sync's write transaction.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWalEnabled();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void setWalEnabled() {
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean WAL can only be switched on once the database is open.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
@@ -45,7 +108,8 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_SAVED + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,10 +145,27 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // Versions 3 to 5 only add an index, the sync log and the saved column, so there's no
+        // need to throw the forecast, or the locations the user saved, away.
+        if (oldVersion >= 2 && newVersion <= 5) {
+            if (oldVersion < 3) {
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+            }
+            if (oldVersion < 4) {
+                sqLiteDatabase.execSQL(SQL_CREATE_SYNC_LOG_TABLE);
+            }
+            if (oldVersion < 5) {
+                sqLiteDatabase.execSQL(SQL_ADD_LOCATION_SAVED);
+            }
+            return;
+        }
+
         // This database is only a cache for online data, so its upgrade policy is
         // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
@@ -93,6 +174,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncLogEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
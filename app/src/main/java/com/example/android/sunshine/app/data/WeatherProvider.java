@@ -17,12 +17,28 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,12 +46,62 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // While a batch is applied on a thread, the rows it changed are collected here and published
+    // once the batch has committed.
+    private final ThreadLocal<PendingChanges> mPendingChanges = new ThreadLocal<PendingChanges>();
+
+    /**
+     * The weather a write touched, kept in enough detail to notify only the
+     * weather/[location] and weather/[location]/[date] URIs that changed.
+     */
+    private static class PendingChanges {
+        // Location row ID to the normalized days written for it.
+        final Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+        // Locations whose weather changed on days we don't know.
+        final Set<Long> locationIds = new HashSet<Long>();
+        final Set<String> locationSettings = new HashSet<String>();
+        // Anything else to notify, such as the location table.
+        final Set<Uri> uris = new LinkedHashSet<Uri>();
+        boolean allWeather;
+        // Time the batch's deletes took, so a sync can tell clearing past days from writing.
+        long deleteNanos;
+
+        void addDay(Long locationId, Long date) {
+            if (locationId == null) {
+                allWeather = true;
+            } else if (date == null) {
+                locationIds.add(locationId);
+            } else {
+                Set<Long> dates = days.get(locationId);
+                if (dates == null) {
+                    dates = new HashSet<Long>();
+                    days.put(locationId, dates);
+                }
+                dates.add(date);
+            }
+        }
+    }
+
+    // Snapshots of the weather/location joins, dropped per location as writes come in.
+    private final QueryCache mQueryCache = new QueryCache();
+
+    // Query timings, split by whether one of our write transactions was open.
+    private final DbContentionStats mContentionStats = new DbContentionStats();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int SYNC_LOG = 400;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final String METHOD_GET_BATCH_TIMES = "getBatchTimes";
+    // The last batch applied: its whole transaction, and the part of it spent deleting
+    public static final String KEY_BATCH_NANOS = "batch_nanos";
+    public static final String KEY_DELETE_NANOS = "delete_nanos";
+
+    private final Bundle mLastBatchTimes = new Bundle();
+
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +118,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -130,6 +196,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_LOG, SYNC_LOG);
         return matcher;
     }
 
@@ -164,6 +231,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SYNC_LOG:
+                return WeatherContract.SyncLogEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,10 +241,30 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        // The joins are what every screen, widget and notification asks for, so they're worth
+        // keeping in memory.  Cursor.getType, needed to snapshot them, arrived in Honeycomb.
+        boolean cacheable = (match == WEATHER_WITH_LOCATION || match == WEATHER_WITH_LOCATION_AND_DATE)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (cacheable) {
+            cacheKey = QueryCache.key(match, uri, projection, sortOrder);
+            cacheGeneration = mQueryCache.getGeneration();
+            Cursor cached = mQueryCache.get(cacheKey);
+            if (cached != null) {
+                cached.setNotificationUri(getContext().getContentResolver(), uri);
+                return cached;
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean contended = mContentionStats.isWriting();
+
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
@@ -213,10 +302,31 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "sync_log"
+            case SYNC_LOG: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncLogEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        // Queries run lazily; filling the first window is where a reader would wait for a lock.
+        retCursor.getCount();
+        mContentionStats.recordQuery(System.nanoTime() - start,
+                contended || mContentionStats.isWriting());
+        if (cacheable) {
+            mQueryCache.put(cacheKey, WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                    retCursor, cacheGeneration);
+        }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
         return retCursor;
     }
@@ -228,6 +338,7 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = getChanges();
         Uri returnUri;
 
         switch (match) {
@@ -238,6 +349,8 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addDay(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
                 break;
             }
             case LOCATION: {
@@ -246,41 +359,106 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // Any cached (empty) result for this setting is now out of date.
+                changes.locationSettings.add(
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                changes.uris.add(uri);
+                break;
+            }
+            case SYNC_LOG: {
+                returnUri = insertSyncLog(db, values);
+                changes.uris.add(uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        publishChanges(changes);
         return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        final long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = getChanges();
         int rowsDeleted;
+        // Clearing the whole table needn't look up what it's about to delete.
+        boolean deleteAll = null == selection;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        db.beginTransactionWithListener(mContentionStats);
+        try {
+            switch (match) {
+                case WEATHER:
+                    if (deleteAll) {
+                        changes.allWeather = true;
+                    } else {
+                        collectWeatherDays(db, selection, selectionArgs, changes);
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    if (deleteAll) {
+                        changes.allWeather = true;
+                    } else {
+                        collectLocationSettings(db, selection, selectionArgs, changes);
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case SYNC_LOG:
+                    rowsDeleted = db.delete(
+                            WeatherContract.SyncLogEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == LOCATION || match == SYNC_LOG) {
+                changes.uris.add(uri);
+            }
+            publishChanges(changes);
+        } else if (deleteAll && changes != mPendingChanges.get()) {
+            // Nothing to notify, but the tables may have been cleared behind our back, so the
+            // cache starts over either way.
+            publishChanges(changes, false);
         }
+        changes.deleteNanos += System.nanoTime() - start;
         return rowsDeleted;
     }
 
+    /**
+     * Adds a run to the sync log and drops the oldest runs beyond
+     * {@link WeatherContract.SyncLogEntry#MAX_ROWS}, in one transaction.
+     */
+    private Uri insertSyncLog(SQLiteDatabase db, ContentValues values) {
+        long _id;
+        db.beginTransactionWithListener(mContentionStats);
+        try {
+            _id = db.insert(WeatherContract.SyncLogEntry.TABLE_NAME, null, values);
+            if (_id <= 0) {
+                throw new android.database.SQLException("Failed to insert row into "
+                        + WeatherContract.SyncLogEntry.CONTENT_URI);
+            }
+            // IDs only grow, so everything at or below this one is older than the runs kept.
+            db.delete(WeatherContract.SyncLogEntry.TABLE_NAME,
+                    WeatherContract.SyncLogEntry._ID + " <= ?",
+                    new String[]{Long.toString(_id - WeatherContract.SyncLogEntry.MAX_ROWS)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return ContentUris.withAppendedId(WeatherContract.SyncLogEntry.CONTENT_URI, _id);
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -294,54 +472,467 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final PendingChanges changes = getChanges();
         int rowsUpdated;
 
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        db.beginTransactionWithListener(mContentionStats);
+        try {
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    Set<Long> locationIds =
+                            collectWeatherDays(db, selection, selectionArgs, changes);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    // Rows moved to another day or location change that one too.
+                    Long newDate = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                    if (newDate != null) {
+                        for (Long locationId : locationIds) {
+                            changes.addDay(locationId, newDate);
+                        }
+                    }
+                    if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                        changes.addDay(
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY), null);
+                    }
+                    break;
+                case LOCATION:
+                    collectLocationSettings(db, selection, selectionArgs, changes);
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    String newSetting = values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                    if (newSetting != null) {
+                        changes.locationSettings.add(newSetting);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == LOCATION) {
+                changes.uris.add(uri);
+            }
+            publishChanges(changes);
         }
         return rowsUpdated;
     }
 
+    // The columns bound by the compiled weather insert, in statement order.
+    private static final String[] WEATHER_INSERT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match WEATHER_INSERT_COLUMNS, and are 1-based like SQLite bindings
+    private static final int BIND_LOC_KEY = 1;
+    private static final int BIND_DATE = 2;
+    private static final int BIND_WEATHER_ID = 3;
+    private static final int BIND_SHORT_DESC = 4;
+    private static final int BIND_MIN_TEMP = 5;
+    private static final int BIND_MAX_TEMP = 6;
+    private static final int BIND_HUMIDITY = 7;
+    private static final int BIND_PRESSURE = 8;
+    private static final int BIND_WIND_SPEED = 9;
+    private static final int BIND_DEGREES = 10;
+
+    // The table's UNIQUE (date, location_id) ON CONFLICT REPLACE still applies to a plain INSERT.
+    private static final String SQL_INSERT_WEATHER;
+
+    static {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" (");
+        StringBuilder params = new StringBuilder();
+        for (int i = 0; i < WEATHER_INSERT_COLUMNS.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                params.append(',');
+            }
+            sql.append(WEATHER_INSERT_COLUMNS[i]);
+            params.append('?');
+        }
+        SQL_INSERT_WEATHER = sql.append(") VALUES (").append(params).append(')').toString();
+    }
+
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
+                final PendingChanges changes = getChanges();
+                db.beginTransactionWithListener(mContentionStats);
                 int returnCount = 0;
+                SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
                 try {
+                    DateNormalizer dates = new DateNormalizer();
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (insertWeather(db, insert, dates, value, changes)) {
                             returnCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    insert.close();
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                if (returnCount > 0) {
+                    publishChanges(changes);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Inserts a columnar batch of weather rows in one transaction, binding primitives straight
+     * into a single compiled statement.
+     *
+     * @return the number of rows inserted.
+     */
+    int bulkInsert(WeatherBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final PendingChanges changes = getChanges();
+        int returnCount = 0;
+        db.beginTransactionWithListener(mContentionStats);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            DateNormalizer dates = new DateNormalizer();
+            for (int i = 0; i < batch.size; i++) {
+                long date = dates.normalize(batch.date[i]);
+                insert.bindLong(BIND_LOC_KEY, batch.locationId[i]);
+                insert.bindLong(BIND_DATE, date);
+                insert.bindLong(BIND_WEATHER_ID, batch.weatherId[i]);
+                if (batch.shortDesc[i] != null) {
+                    insert.bindString(BIND_SHORT_DESC, batch.shortDesc[i]);
+                } else {
+                    insert.bindNull(BIND_SHORT_DESC);
+                }
+                insert.bindDouble(BIND_MIN_TEMP, batch.minTemp[i]);
+                insert.bindDouble(BIND_MAX_TEMP, batch.maxTemp[i]);
+                insert.bindDouble(BIND_HUMIDITY, batch.humidity[i]);
+                insert.bindDouble(BIND_PRESSURE, batch.pressure[i]);
+                insert.bindDouble(BIND_WIND_SPEED, batch.windSpeed[i]);
+                insert.bindDouble(BIND_DEGREES, batch.degrees[i]);
+                if (executeInsert(insert) != -1) {
+                    changes.addDay(batch.locationId[i], date);
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        if (returnCount > 0) {
+            publishChanges(changes);
+        }
+        return returnCount;
+    }
+
+    /**
+     * Binds one row of ContentValues into the compiled insert.  Rows carrying columns the
+     * statement doesn't cover go through db.insert instead, so nothing is silently dropped.
+     * The ContentValues themselves are left untouched.
+     */
+    private boolean insertWeather(SQLiteDatabase db, SQLiteStatement insert,
+            DateNormalizer dates, ContentValues value, PendingChanges changes) {
+        Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (date != null) {
+            date = dates.normalize(date);
+        }
+        int bound = 0;
+        for (int i = 0; i < WEATHER_INSERT_COLUMNS.length; i++) {
+            Object column = value.get(WEATHER_INSERT_COLUMNS[i]);
+            if (column != null) {
+                bound++;
+            }
+            bind(insert, i + 1, i + 1 == BIND_DATE ? date : column);
+        }
+        boolean inserted;
+        if (bound != value.size()) {
+            ContentValues copy = new ContentValues(value);
+            copy.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+            inserted = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, copy) != -1;
+        } else {
+            inserted = executeInsert(insert) != -1;
+        }
+        if (inserted) {
+            changes.addDay(value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY), date);
+        }
+        return inserted;
+    }
+
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Like db.insert, a row that violates a constraint is skipped rather than failing the batch.
+     */
+    private static long executeInsert(SQLiteStatement insert) {
+        try {
+            return insert.executeInsert();
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Remembers the last date it normalized.  Batches are full of repeated days, and
+     * {@link WeatherContract#normalizeDate} allocates a Time on every call.
+     */
+    private static class DateNormalizer {
+        private long mLastDate = Long.MIN_VALUE;
+        private long mLastNormalized;
+
+        long normalize(long date) {
+            if (date != mLastDate) {
+                mLastDate = date;
+                mLastNormalized = WeatherContract.normalizeDate(date);
+            }
+            return mLastNormalized;
+        }
+    }
+
+    /*
+        Used by WeatherBatch.insert to hand over a columnar batch without going through
+        ContentValues, by DbContentionStats and QueryCache to read their counters, and by
+        getLastBatchTimes.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherBatch.METHOD_BULK_INSERT.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherBatch.RESULT_COUNT, bulkInsert(WeatherBatch.fromBundle(extras)));
+            return result;
+        } else if (DbContentionStats.METHOD_GET.equals(method)) {
+            return mContentionStats.toBundle();
+        } else if (DbContentionStats.METHOD_RESET.equals(method)) {
+            mContentionStats.reset();
+            return null;
+        } else if (QueryCache.METHOD_GET_STATS.equals(method)) {
+            return mQueryCache.getStats();
+        } else if (METHOD_GET_BATCH_TIMES.equals(method)) {
+            synchronized (mLastBatchTimes) {
+                return new Bundle(mLastBatchTimes);
+            }
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Applies every operation in a single transaction, so readers never see a half-applied
+     * batch.  Change notifications are held back until the transaction commits and are then
+     * sent once per affected URI.  How long it took is kept for {@link #getLastBatchTimes}.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final long start = System.nanoTime();
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        PendingChanges pending = new PendingChanges();
+        mPendingChanges.set(pending);
+        ContentProviderResult[] results;
+        boolean committed = false;
+        db.beginTransactionWithListener(mContentionStats);
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            mPendingChanges.remove();
+            // Readers may have cached the old rows while the transaction was open, so the
+            // cache is only dropped once it has ended, even if nothing was committed.
+            publishChanges(pending, committed);
+        }
+        synchronized (mLastBatchTimes) {
+            mLastBatchTimes.putLong(KEY_BATCH_NANOS, System.nanoTime() - start);
+            mLastBatchTimes.putLong(KEY_DELETE_NANOS, pending.deleteNanos);
+        }
+        return results;
+    }
+
+    /**
+     * Reads the times of the last batch applied to the weather provider.  Only the sync adapter
+     * applies batches, and it syncs one at a time, so that's the caller's own batch.
+     *
+     * @return the times under KEY_BATCH_NANOS and KEY_DELETE_NANOS, or null before Honeycomb.
+     */
+    public static Bundle getLastBatchTimes(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return null;
+        }
+        return resolver.call(WeatherContract.BASE_CONTENT_URI, METHOD_GET_BATCH_TIMES, null, null);
+    }
+
+    /**
+     * @return the changes of the batch being applied on this thread, or a fresh set for a
+     * single operation.
+     */
+    private PendingChanges getChanges() {
+        PendingChanges pending = mPendingChanges.get();
+        return pending != null ? pending : new PendingChanges();
+    }
+
+    private void publishChanges(PendingChanges changes) {
+        // A batch publishes everything at once after it commits.
+        if (changes != mPendingChanges.get()) {
+            publishChanges(changes, true);
+        }
+    }
+
+    /**
+     * Drops the cached queries of every location in {@code changes} and, if {@code notify},
+     * sends one notification per changed URI: weather/[location]/[date] where a single day was
+     * written, weather/[location] where several were or the days aren't known.
+     */
+    private void publishChanges(PendingChanges changes, boolean notify) {
+        Set<Uri> uris = new LinkedHashSet<Uri>();
+        Map<Long, String> settings = changes.allWeather ? null : getLocationSettings(changes);
+        if (settings == null) {
+            mQueryCache.invalidateAll();
+            uris.add(WeatherContract.WeatherEntry.CONTENT_URI);
+        } else {
+            Set<String> wholeLocations = new HashSet<String>(changes.locationSettings);
+            for (Long locationId : changes.locationIds) {
+                wholeLocations.add(settings.get(locationId));
+            }
+            Set<String> invalidated = new HashSet<String>(wholeLocations);
+            for (String locationSetting : wholeLocations) {
+                uris.add(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+            }
+            for (Map.Entry<Long, Set<Long>> entry : changes.days.entrySet()) {
+                String locationSetting = settings.get(entry.getKey());
+                invalidated.add(locationSetting);
+                if (wholeLocations.contains(locationSetting)) {
+                    continue;
+                }
+                Set<Long> dates = entry.getValue();
+                if (dates.size() > 1) {
+                    // One notification for the location reaches the observers of each of its
+                    // days too, and wakes the forecast list once rather than once per day.
+                    uris.add(WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+                    continue;
+                }
+                for (Long date : dates) {
+                    uris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, date));
+                }
+            }
+            if (!invalidated.isEmpty()) {
+                mQueryCache.invalidate(invalidated);
+            }
+        }
+        if (notify) {
+            uris.addAll(changes.uris);
+            for (Uri uri : uris) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+    }
+
+    /**
+     * Resolves the location row IDs in {@code changes} to their location settings.
+     *
+     * @return the settings by row ID, or null if a row points at a location we can't name.
+     */
+    private Map<Long, String> getLocationSettings(PendingChanges changes) {
+        Set<Long> locationIds = new HashSet<Long>(changes.locationIds);
+        locationIds.addAll(changes.days.keySet());
+        Map<Long, String> settings = new HashMap<Long, String>();
+        if (locationIds.isEmpty()) {
+            return settings;
+        }
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID)
+                .append(" IN (");
+        String[] selectionArgs = new String[locationIds.size()];
+        int i = 0;
+        for (Long locationId : locationIds) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(')');
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                settings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return settings.size() == locationIds.size() ? settings : null;
+    }
+
+    /**
+     * Records the location and day of every weather row matching the selection, before an
+     * update or delete changes them.
+     *
+     * @return the row IDs of the locations found.
+     */
+    private static Set<Long> collectWeatherDays(SQLiteDatabase db, String selection,
+            String[] selectionArgs, PendingChanges changes) {
+        Set<Long> locationIds = new HashSet<Long>();
+        Cursor cursor = db.query(true, WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationIds.add(cursor.getLong(0));
+                changes.addDay(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationIds;
+    }
+
+    /**
+     * Records the setting of every location row matching the selection, before an update or
+     * delete changes them.
+     */
+    private static void collectLocationSettings(SQLiteDatabase db, String selection,
+            String[] selectionArgs, PendingChanges changes) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                changes.locationSettings.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * Stops fetching from a weather server that keeps failing.  After {@code failureThreshold}
+ * consecutive failed fetches the circuit opens and no request is made until the open period
+ * has passed; then a single fetch is let through, and the circuit closes again if it succeeds
+ * or reopens for twice as long if it doesn't.  The state is kept in SharedPreferences, so a
+ * failing server isn't retried just because the process was restarted.
+ */
+public class CircuitBreaker {
+    private static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_circuit_breaker";
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 1000 * 60 * 15;
+    // However often the server has failed, try it again at least this often.
+    static final long MAX_OPEN_MILLIS = 1000 * 60 * 60 * 12;
+
+    private static final String KEY_FAILURES = ".failures";
+    private static final String KEY_OPEN_UNTIL = ".open_until";
+    private static final String KEY_OPEN_COUNT = ".open_count";
+
+    // Every CircuitBreaker in the process shares its preferences file, and so its state.
+    private static final Object sLock = new Object();
+
+    private final SharedPreferences mPrefs;
+    private final String mEndpoint;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    public CircuitBreaker(Context context, String endpoint) {
+        this(context, endpoint, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * Used by tests to trip and reset the circuit quickly.
+     */
+    CircuitBreaker(Context context, String endpoint, int failureThreshold, long openMillis) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mEndpoint = endpoint;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * @return true if a request may be made now.  While the circuit is open this is false until
+     * the open period ends, and then true for one trial request.
+     */
+    public boolean allowRequest() {
+        synchronized (sLock) {
+            long openUntil = getOpenUntil();
+            long now = System.currentTimeMillis();
+            if (openUntil == 0) {
+                return true;
+            } else if (now < openUntil) {
+                return false;
+            }
+            // Half open: hold everyone else back while the trial request runs.
+            mPrefs.edit().putLong(mEndpoint + KEY_OPEN_UNTIL, now + mOpenMillis).commit();
+            return true;
+        }
+    }
+
+    /**
+     * @return the wall clock time the circuit stays open until, or 0 if it's closed.
+     */
+    public long getOpenUntil() {
+        return mPrefs.getLong(mEndpoint + KEY_OPEN_UNTIL, 0);
+    }
+
+    public int getConsecutiveFailures() {
+        return mPrefs.getInt(mEndpoint + KEY_FAILURES, 0);
+    }
+
+    public void onSuccess() {
+        synchronized (sLock) {
+            if (getConsecutiveFailures() == 0 && getOpenUntil() == 0) {
+                return;
+            }
+            mPrefs.edit()
+                    .remove(mEndpoint + KEY_FAILURES)
+                    .remove(mEndpoint + KEY_OPEN_UNTIL)
+                    .remove(mEndpoint + KEY_OPEN_COUNT)
+                    .commit();
+        }
+    }
+
+    public void onFailure() {
+        synchronized (sLock) {
+            int failures = getConsecutiveFailures() + 1;
+            SharedPreferences.Editor editor = mPrefs.edit();
+            editor.putInt(mEndpoint + KEY_FAILURES, failures);
+            if (failures >= mFailureThreshold) {
+                // Each reopening without a success in between doubles the wait.
+                int openCount = mPrefs.getInt(mEndpoint + KEY_OPEN_COUNT, 0);
+                long openMillis = Math.min(mOpenMillis << Math.min(openCount, 16), MAX_OPEN_MILLIS);
+                editor.putLong(mEndpoint + KEY_OPEN_UNTIL, System.currentTimeMillis() + openMillis);
+                editor.putInt(mEndpoint + KEY_OPEN_COUNT, openCount + 1);
+                // The trial request after this period counts as the next failure on its own.
+                editor.putInt(mEndpoint + KEY_FAILURES, mFailureThreshold - 1);
+                Log.w(LOG_TAG, mEndpoint + " failed " + failures + " times, not trying again for "
+                        + openMillis / 1000 + "s");
+            }
+            editor.commit();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Compares a freshly parsed forecast with the rows already stored for the same location, so
+ * the sync only writes the days that actually changed.
+ */
+final class ForecastDiff {
+
+    static final String[] STORED_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    // these indices must match the projection
+    static final int COL_DATE = 0;
+    static final int COL_HUMIDITY = 1;
+    static final int COL_PRESSURE = 2;
+    static final int COL_WIND_SPEED = 3;
+    static final int COL_DEGREES = 4;
+    static final int COL_MAX_TEMP = 5;
+    static final int COL_MIN_TEMP = 6;
+    static final int COL_SHORT_DESC = 7;
+    static final int COL_WEATHER_ID = 8;
+
+    private ForecastDiff() {
+    }
+
+    /**
+     * Finds the days of a forecast that differ from what is stored for its location.
+     *
+     * @param context used to query the provider
+     * @param locationSetting the location the forecast was fetched for
+     * @param forecast the parsed forecast
+     * @param dates the date each day of the forecast will be stored under
+     * @return for each day, true if it is new or any of its values changed.
+     */
+    static boolean[] findChangedDays(Context context, String locationSetting,
+            ForecastJsonParser.Forecast forecast, long[] dates) {
+        Cursor stored = context.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(locationSetting),
+                STORED_PROJECTION, null, null, null);
+        try {
+            return findChangedDays(stored, forecast, dates);
+        } finally {
+            if (stored != null) {
+                stored.close();
+            }
+        }
+    }
+
+    /**
+     * @param stored rows in {@link #STORED_PROJECTION}, or null if nothing is stored
+     * @see #findChangedDays(Context, String, ForecastJsonParser.Forecast, long[])
+     */
+    static boolean[] findChangedDays(Cursor stored, ForecastJsonParser.Forecast forecast,
+            long[] dates) {
+        boolean[] changed = new boolean[forecast.count];
+        // Until a matching row turns up, every day is new.
+        for (int i = 0; i < forecast.count; i++) {
+            changed[i] = true;
+        }
+        if (stored == null) {
+            return changed;
+        }
+
+        // The provider normalizes dates on the way in, so compare against the normalized form.
+        long[] normalized = new long[forecast.count];
+        for (int i = 0; i < forecast.count; i++) {
+            normalized[i] = WeatherContract.normalizeDate(dates[i]);
+        }
+
+        while (stored.moveToNext()) {
+            long date = stored.getLong(COL_DATE);
+            // A forecast holds a couple of weeks at most, a linear scan is fine.
+            for (int i = 0; i < forecast.count; i++) {
+                if (normalized[i] == date) {
+                    changed[i] = !sameDay(stored, forecast, i);
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean sameDay(Cursor stored, ForecastJsonParser.Forecast forecast, int i) {
+        // Values are stored as parsed, so the round trip through SQLite is exact.
+        return stored.getInt(COL_WEATHER_ID) == forecast.weatherId[i]
+                && stored.getDouble(COL_HUMIDITY) == forecast.humidity[i]
+                && stored.getDouble(COL_PRESSURE) == forecast.pressure[i]
+                && stored.getDouble(COL_WIND_SPEED) == forecast.windSpeed[i]
+                && stored.getDouble(COL_DEGREES) == forecast.windDirection[i]
+                && stored.getDouble(COL_MAX_TEMP) == forecast.high[i]
+                && stored.getDouble(COL_MIN_TEMP) == forecast.low[i]
+                && stored.getString(COL_SHORT_DESC).equals(forecast.description[i]);
+    }
+}
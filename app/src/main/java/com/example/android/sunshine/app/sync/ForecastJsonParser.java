@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+/**
+ * Turns an OpenWeatherMap daily forecast response into a {@link Forecast}.
+ *
+ * The streaming parser pulls tokens straight off the {@link InputStream}, so neither the raw
+ * response string nor a JSONObject tree is ever held in memory.  The JSONObject based parser is
+ * kept for devices that predate {@link JsonReader} and as the baseline for benchmarks.
+ */
+public final class ForecastJsonParser {
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    // Bits recording which of the required per-day fields have been seen.
+    private static final int SEEN_PRESSURE = 1;
+    private static final int SEEN_HUMIDITY = 1 << 1;
+    private static final int SEEN_WINDSPEED = 1 << 2;
+    private static final int SEEN_WIND_DIRECTION = 1 << 3;
+    private static final int SEEN_MAX = 1 << 4;
+    private static final int SEEN_MIN = 1 << 5;
+    private static final int SEEN_WEATHER = 1 << 6;
+    private static final int SEEN_ALL = (1 << 7) - 1;
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * A parsed forecast.  Days are stored column by column in primitive arrays, so a 16 day
+     * forecast costs a handful of arrays rather than a map per day.
+     */
+    public static final class Forecast {
+        private static final int DEFAULT_CAPACITY = 16;
+
+        // The "cod" field of the response.  OWM leaves it out of some successful responses.
+        public int code = HttpURLConnection.HTTP_OK;
+
+        public String cityName;
+        public double latitude;
+        public double longitude;
+
+        // Number of valid entries in each of the arrays below.
+        public int count;
+        public double[] pressure = new double[DEFAULT_CAPACITY];
+        public int[] humidity = new int[DEFAULT_CAPACITY];
+        public double[] windSpeed = new double[DEFAULT_CAPACITY];
+        public double[] windDirection = new double[DEFAULT_CAPACITY];
+        public double[] high = new double[DEFAULT_CAPACITY];
+        public double[] low = new double[DEFAULT_CAPACITY];
+        public String[] description = new String[DEFAULT_CAPACITY];
+        public int[] weatherId = new int[DEFAULT_CAPACITY];
+
+        void ensureCapacity(int size) {
+            if (size <= pressure.length) {
+                return;
+            }
+            int capacity = Math.max(size, pressure.length * 2);
+            pressure = Arrays.copyOf(pressure, capacity);
+            humidity = Arrays.copyOf(humidity, capacity);
+            windSpeed = Arrays.copyOf(windSpeed, capacity);
+            windDirection = Arrays.copyOf(windDirection, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            description = Arrays.copyOf(description, capacity);
+            weatherId = Arrays.copyOf(weatherId, capacity);
+        }
+    }
+
+    /**
+     * Parses the response with whichever parser this device supports.
+     *
+     * @param in the response body.  It is read to the end but not closed.
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the response is not a well formed forecast
+     */
+    public static Forecast parse(InputStream in) throws IOException, JSONException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return parseStreaming(in);
+        }
+        return parseWithJsonObject(in);
+    }
+
+    /**
+     * Pull parser over the response stream.  Unknown fields are skipped without being
+     * materialized.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static Forecast parseStreaming(InputStream in) throws IOException, JSONException {
+        Forecast forecast = new Forecast();
+        boolean seenList = false;
+        boolean seenCity = false;
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.code = reader.nextInt();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                    seenCity = true;
+                } else if (OWM_LIST.equals(name)) {
+                    readList(reader, forecast);
+                    seenList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw asJsonException(e);
+        }
+
+        // Error responses carry nothing but the code and a message.
+        if (forecast.code == HttpURLConnection.HTTP_OK) {
+            if (!seenList) {
+                throw new JSONException("No value for " + OWM_LIST);
+            }
+            if (!seenCity) {
+                throw new JSONException("No value for " + OWM_CITY);
+            }
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean seenName = false;
+        boolean seenCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+                seenName = true;
+            } else if (OWM_COORD.equals(name)) {
+                int seen = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.latitude = reader.nextDouble();
+                        seen |= 1;
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.longitude = reader.nextDouble();
+                        seen |= 2;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                seenCoord = seen == 3;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!seenName || !seenCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY + " object");
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readList(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int i = forecast.count;
+            forecast.ensureCapacity(i + 1);
+            int seen = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_PRESSURE.equals(name)) {
+                    forecast.pressure[i] = reader.nextDouble();
+                    seen |= SEEN_PRESSURE;
+                } else if (OWM_HUMIDITY.equals(name)) {
+                    // JSONObject.getInt truncates fractional values, so do the same here.
+                    forecast.humidity[i] = (int) reader.nextDouble();
+                    seen |= SEEN_HUMIDITY;
+                } else if (OWM_WINDSPEED.equals(name)) {
+                    forecast.windSpeed[i] = reader.nextDouble();
+                    seen |= SEEN_WINDSPEED;
+                } else if (OWM_WIND_DIRECTION.equals(name)) {
+                    forecast.windDirection[i] = reader.nextDouble();
+                    seen |= SEEN_WIND_DIRECTION;
+                } else if (OWM_TEMPERATURE.equals(name)) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String tempName = reader.nextName();
+                        if (OWM_MAX.equals(tempName)) {
+                            forecast.high[i] = reader.nextDouble();
+                            seen |= SEEN_MAX;
+                        } else if (OWM_MIN.equals(tempName)) {
+                            forecast.low[i] = reader.nextDouble();
+                            seen |= SEEN_MIN;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else if (OWM_WEATHER.equals(name)) {
+                    // Description is in a child array called "weather", which is 1 element long.
+                    // That element also contains a weather code.
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        int weatherSeen = 0;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String weatherName = reader.nextName();
+                            if (OWM_DESCRIPTION.equals(weatherName)) {
+                                forecast.description[i] = reader.nextString();
+                                weatherSeen |= 1;
+                            } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                                forecast.weatherId[i] = reader.nextInt();
+                                weatherSeen |= 2;
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (weatherSeen == 3) {
+                            seen |= SEEN_WEATHER;
+                        }
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (seen != SEEN_ALL) {
+                throw new JSONException("Incomplete forecast for day " + i);
+            }
+            forecast.count++;
+        }
+        reader.endArray();
+    }
+
+    private static JSONException asJsonException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+
+    /**
+     * The original parser: buffer the whole response into a String, build a JSONObject tree
+     * from it and then walk the tree.
+     */
+    public static Forecast parseWithJsonObject(InputStream in) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        StringBuilder buffer = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line).append('\n');
+        }
+        return parseWithJsonObject(buffer.toString());
+    }
+
+    static Forecast parseWithJsonObject(String forecastJsonStr) throws JSONException {
+        Forecast forecast = new Forecast();
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.code = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (forecast.code != HttpURLConnection.HTTP_OK) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.latitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.longitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        forecast.ensureCapacity(weatherArray.length());
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            forecast.pressure[i] = dayForecast.getDouble(OWM_PRESSURE);
+            forecast.humidity[i] = dayForecast.getInt(OWM_HUMIDITY);
+            forecast.windSpeed[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            forecast.windDirection[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            forecast.description[i] = weatherObject.getString(OWM_DESCRIPTION);
+            forecast.weatherId[i] = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            forecast.high[i] = temperatureObject.getDouble(OWM_MAX);
+            forecast.low[i] = temperatureObject.getDouble(OWM_MIN);
+            forecast.count++;
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers the ETag and Last-Modified validators of the last forecast we stored for each
+ * location query, so the next sync can ask the server whether anything changed.
+ */
+public class HttpValidatorStore {
+
+    static final String PREFS_NAME = "http_validators";
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String KEY_ETAG = ".etag";
+    private static final String KEY_LAST_MODIFIED = ".last_modified";
+
+    private final SharedPreferences mPrefs;
+
+    public HttpValidatorStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds If-None-Match/If-Modified-Since to a request that has not been connected yet.
+     *
+     * @return true if any validator was sent, i.e. the server may answer 304 Not Modified.
+     */
+    public boolean applyTo(HttpURLConnection connection, String key) {
+        String etag = mPrefs.getString(key + KEY_ETAG, null);
+        String lastModified = mPrefs.getString(key + KEY_LAST_MODIFIED, null);
+        if (etag != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Saves the validators of a response.  Only call this once the response body has been
+     * stored, otherwise a later 304 would leave us with data we never wrote.  A null validator
+     * removes any stored value.  This function should not be called from the UI thread because
+     * it uses commit.
+     */
+    public void save(String key, String etag, String lastModified) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (etag != null) {
+            editor.putString(key + KEY_ETAG, etag);
+        } else {
+            editor.remove(key + KEY_ETAG);
+        }
+        if (lastModified != null) {
+            editor.putString(key + KEY_LAST_MODIFIED, lastModified);
+        } else {
+            editor.remove(key + KEY_LAST_MODIFIED);
+        }
+        editor.commit();
+    }
+
+    /**
+     * Forgets the validators for a key, forcing the next request to download everything.
+     */
+    public void clear(String key) {
+        mPrefs.edit()
+                .remove(key + KEY_ETAG)
+                .remove(key + KEY_LAST_MODIFIED)
+                .commit();
+    }
+}
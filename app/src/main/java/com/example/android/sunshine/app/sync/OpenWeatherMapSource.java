@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches the 14 day forecast, in metric units, from OpenWeatherMap.
+ */
+public class OpenWeatherMapSource implements WeatherSource {
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+
+    static final int NUM_DAYS = 14;
+
+    private final String mBaseUrl;
+
+    public OpenWeatherMapSource() {
+        this(FORECAST_BASE_URL);
+    }
+
+    /**
+     * Used by tests to point the source at a local server.
+     */
+    OpenWeatherMapSource(String baseUrl) {
+        mBaseUrl = baseUrl;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return Uri.parse(mBaseUrl).getAuthority();
+    }
+
+    @Override
+    public HttpURLConnection openConnection(String locationQuery) throws IOException {
+        String format = "json";
+        String units = "metric";
+
+        final String QUERY_PARAM = "q";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationQuery)
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+
+        URL url = new URL(builtUri.toString());
+
+        // Create the request to OpenWeatherMap
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        return urlConnection;
+    }
+
+    @Override
+    public ForecastJsonParser.Forecast parse(InputStream in) throws IOException, JSONException {
+        return ForecastJsonParser.parse(in);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The locations the user chose to follow besides the preferred one, which are synced along
+ * with it.  A location is saved by stamping its row in the location table with the time it was
+ * saved, so the list keeps its order and goes wherever the row goes.  Only a location that has
+ * been fetched at least once has a row, and so can be saved.
+ *
+ * These functions query the provider and should not be called from the UI thread.
+ */
+public class SavedLocationStore {
+
+    private static final String SELECTION_SETTING = LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+    private static final String SELECTION_SAVED = LocationEntry.COLUMN_SAVED + " > 0";
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+
+    public SavedLocationStore(Context context) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+    }
+
+    /**
+     * Starts syncing a location.  Adding one that is already saved keeps its place.
+     *
+     * @return whether the location is now saved; false if it has never been fetched.
+     */
+    public boolean add(String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_SAVED, System.currentTimeMillis());
+        mResolver.update(LocationEntry.CONTENT_URI, values,
+                SELECTION_SETTING + " AND " + LocationEntry.COLUMN_SAVED + " = 0",
+                new String[]{locationSetting});
+        return contains(locationSetting);
+    }
+
+    /**
+     * Stops syncing a location.  Its stored days roll off as they pass, and its validators are
+     * dropped so that adding it again fetches it in full.
+     */
+    public void remove(String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_SAVED, 0);
+        mResolver.update(LocationEntry.CONTENT_URI, values,
+                SELECTION_SETTING + " AND " + SELECTION_SAVED, new String[]{locationSetting});
+        new HttpValidatorStore(mContext).clear(locationSetting);
+    }
+
+    public boolean contains(String locationSetting) {
+        Cursor cursor = mResolver.query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                SELECTION_SETTING + " AND " + SELECTION_SAVED, new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean saved = cursor.moveToFirst();
+        cursor.close();
+        return saved;
+    }
+
+    /**
+     * @return the saved locations in the order they were added.
+     */
+    public List<String> getAll() {
+        List<String> locations = new ArrayList<String>();
+        Cursor cursor = mResolver.query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                SELECTION_SAVED, null,
+                LocationEntry.COLUMN_SAVED + " ASC, "
+                        + LocationEntry.COLUMN_LOCATION_SETTING + " ASC");
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                locations.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return locations;
+    }
+}
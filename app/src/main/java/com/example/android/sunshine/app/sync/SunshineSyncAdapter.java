@@ -7,11 +7,12 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,6 +23,8 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -30,26 +33,19 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
@@ -87,6 +83,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Set when the framework cancels the running sync, e.g. because the location changed.
+    private volatile boolean mCanceled;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -94,268 +93,209 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
+        mCanceled = false;
+        Context context = getContext();
+        String preferredLocation = Utility.getPreferredLocation(context);
+        SyncCoordinator coordinator = SyncCoordinator.getInstance();
+        coordinator.onSyncStarted(preferredLocation);
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            performSync(context, preferredLocation, syncResult);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            coordinator.onSyncFinished();
         }
-        return;
+        Log.d(LOG_TAG, coordinator.getCoalescedCount() + " sync requests coalesced so far");
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Stops the running sync before it writes anything.  The fetches already on the wire are left
+     * to finish, since another sync may be sharing them.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    @Override
+    public void onSyncCanceled() {
+        Log.d(LOG_TAG, "Sync canceled");
+        mCanceled = true;
+        super.onSyncCanceled();
+    }
 
-        final String OWM_MESSAGE_CODE = "cod";
+    private void performSync(Context context, String preferredLocation, SyncResult syncResult) {
+        List<String> locations = SyncEngine.getSavedLocations(context);
 
+        // Every location is fetched and parsed concurrently; nothing is written until all of
+        // them are done, so the database sees one commit however many locations there are.
+        SyncStats stats = new SyncStats();
+        SyncEngine engine = new SyncEngine(context);
+        List<SyncEngine.LocationResult> results;
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            results = engine.fetchAll(locations);
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Sync interrupted");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (mCanceled) {
+            return;
+        }
+
+        stats.addFetches(results);
+        boolean preferredChanged = storeForecasts(results, stats);
+
+        new SyncStatusStore(context).save(results);
+        for (SyncEngine.LocationResult result : results) {
+            Log.d(LOG_TAG, "Fetched " + result.locationSetting + " in " + result.latencyMillis
+                    + "ms with " + result.retries + " retries, status " + result.status
+                    + (result.notModified ? " (not modified)" : ""));
+            if (result.locationSetting.equals(preferredLocation)) {
+                setLocationStatus(context, result.status);
+                stats.status = result.status;
+                if (result.circuitOpen) {
+                    // Don't let the framework run this sync again before the server is retried.
+                    syncResult.delayUntil = engine.getCircuitBreaker().getOpenUntil() / 1000;
+                } else if (result.status == LOCATION_STATUS_SERVER_DOWN) {
+                    // Have the framework reschedule the sync with its own backoff.
+                    syncResult.stats.numIoExceptions++;
                 }
             }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
+        if (preferredChanged) {
+            long fanOutStart = SystemClock.elapsedRealtime();
+            fanOut();
+            stats.fanOutMillis = SystemClock.elapsedRealtime() - fanOutStart;
+        }
+        stats.finish();
+        stats.save(context);
+        Log.d(LOG_TAG, "Sync Complete. " + stats);
+    }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+    /**
+     * Take the parsed forecasts and store the days that changed.  New locations, weather rows
+     * and the removal of old days all go to the provider as one batch, which commits in a single
+     * transaction and notifies each affected URI once.  Days identical to the stored rows are
+     * not rewritten, and if nothing changed nothing is written or notified at all.
+     *
+     * @param results the results of fetching every location
+     * @param stats receives the time spent on the batch and on its delete, and the rows written.
+     * @return true if the forecast of the preferred location changed.
+     */
+    boolean storeForecasts(List<SyncEngine.LocationResult> results, SyncStats stats) {
+        Context context = getContext();
+        String preferredLocation = Utility.getPreferredLocation(context);
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        dayTime = new Time();
+
+        Map<String, Long> locationIds = getLocationIds();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        List<SyncEngine.LocationResult> stored = new ArrayList<SyncEngine.LocationResult>();
+        int inserted = 0;
+        boolean preferredChanged = false;
+        for (SyncEngine.LocationResult result : results) {
+            ForecastJsonParser.Forecast forecast = result.forecast;
+            if (forecast == null || forecast.count == 0) {
+                continue;
+            }
+            stored.add(result);
 
+            long[] dates = new long[forecast.count];
+            for (int i = 0; i < forecast.count; i++) {
                 // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+                dates[i] = dayTime.setJulianDay(julianStartDay + i);
+            }
+            boolean[] changed = ForecastDiff.findChangedDays(context, result.locationSetting,
+                    forecast, dates);
+
+            Long locationId = locationIds.get(result.locationSetting);
+            int locationInsertIndex = -1;
+            for (int i = 0; i < forecast.count; i++) {
+                if (!changed[i]) {
+                    continue;
+                }
+                if (locationId == null && locationInsertIndex == -1) {
+                    locationInsertIndex = addLocation(operations, result.locationSetting,
+                            forecast.cityName, forecast.latitude, forecast.longitude);
+                }
+                preferredChanged |= result.locationSetting.equals(preferredLocation);
 
                 ContentValues weatherValues = new ContentValues();
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dates[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, forecast.humidity[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, forecast.pressure[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, forecast.windSpeed[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, forecast.windDirection[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, forecast.high[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, forecast.low[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, forecast.description[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, forecast.weatherId[i]);
+
+                ContentProviderOperation.Builder insert = ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues);
+                if (locationId != null) {
+                    insert.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                } else {
+                    // The location is inserted earlier in the same batch.
+                    insert.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            locationInsertIndex);
+                }
+                operations.add(insert.build());
+                inserted++;
             }
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        // delete old data so we don't build up an endless history, even when every location
+        // answered 304 and nothing new is written.  This only notifies if a day actually rolled
+        // off.
+        operations.add(ContentProviderOperation.newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                .build());
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        long writeStart = SystemClock.elapsedRealtime();
+        try {
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing forecasts", e);
+            return false;
+        }
+        stats.writeMillis = SystemClock.elapsedRealtime() - writeStart;
+        stats.rowsWritten = inserted;
+        Bundle batchTimes = WeatherProvider.getLastBatchTimes(context.getContentResolver());
+        if (batchTimes != null) {
+            stats.deleteMillis = batchTimes.getLong(WeatherProvider.KEY_DELETE_NANOS) / 1000000;
         }
+
+        // Only now that the rows are written may a 304 stand in for them.
+        HttpValidatorStore validators = new HttpValidatorStore(context);
+        for (SyncEngine.LocationResult result : stored) {
+            validators.save(result.locationSetting, result.etag, result.lastModified);
+        }
+        Log.d(LOG_TAG, inserted + " Inserted for " + stored.size() + " locations");
+        return preferredChanged;
+    }
+
+    /**
+     * Tells everything that shows the preferred location's forecast outside the app that it
+     * changed: the widgets, Muzei and the notification.
+     */
+    void fanOut() {
+        updateWidgets();
+        updateMuzei();
+        notifyWeather();
     }
 
     private void updateWidgets() {
@@ -484,53 +424,55 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Looks up the row IDs of every stored location.
      *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return location setting to row ID.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
+    private Map<String, Long> getLocationIds() {
+        Map<String, Long> locationIds = new HashMap<String, Long>();
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
                 null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                locationIds.put(locationCursor.getString(1), locationCursor.getLong(0));
+            }
+            locationCursor.close();
         }
+        return locationIds;
+    }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    /**
+     * Helper method to queue the insertion of a new location in the weather database.
+     *
+     * @param operations The batch to add the insertion to.
+     * @param locationSetting The location string used to request updates from the server.
+     * @param cityName A human-readable city name, e.g "Mountain View"
+     * @param lat the latitude of the city
+     * @param lon the longitude of the city
+     * @return the index of the insertion in the batch, for use as a back reference.
+     */
+    int addLocation(ArrayList<ContentProviderOperation> operations, String locationSetting,
+            String cityName, double lat, double lon) {
+        // First create a ContentValues object to hold the data you want to insert.
+        ContentValues locationValues = new ContentValues();
+
+        // Then add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+
+        operations.add(ContentProviderOperation
+                .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValues(locationValues)
+                .build());
+        return operations.size() - 1;
     }
 
     /**
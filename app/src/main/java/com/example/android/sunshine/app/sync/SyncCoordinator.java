@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps sync requests from doing the same work twice.  A fetch for a location that is already
+ * being fetched waits for that fetch and shares its result, and a burst of location edits turns
+ * into a single sync once the user stops typing.  A sync still running for a location the user
+ * has since changed away from is cancelled.
+ */
+public class SyncCoordinator {
+    private static final String LOG_TAG = SyncCoordinator.class.getSimpleName();
+
+    // How long the location must stay put before it's synced.
+    static final long LOCATION_DEBOUNCE_MILLIS = 1500;
+
+    private static final SyncCoordinator sInstance = new SyncCoordinator();
+
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private final Map<String, FutureTask<SyncEngine.LocationResult>> mInFlight =
+            new HashMap<String, FutureTask<SyncEngine.LocationResult>>();
+    private String mSyncingLocation;
+    private int mCoalescedCount;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Main thread only.
+    private Runnable mPendingLocationSync;
+
+    public static SyncCoordinator getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Fetches a location, or if it is already being fetched, waits for that fetch instead.
+     *
+     * @param fetcher does the fetch if no other caller is already doing it.
+     * @return the result of whichever fetch ran.
+     * @throws InterruptedException if the caller was interrupted while waiting.
+     */
+    SyncEngine.LocationResult fetch(String locationSetting,
+            Callable<SyncEngine.LocationResult> fetcher) throws InterruptedException {
+        FutureTask<SyncEngine.LocationResult> task;
+        boolean owner = false;
+        synchronized (mLock) {
+            task = mInFlight.get(locationSetting);
+            if (task == null) {
+                task = new FutureTask<SyncEngine.LocationResult>(fetcher);
+                mInFlight.put(locationSetting, task);
+                owner = true;
+            } else {
+                mCoalescedCount++;
+                Log.d(LOG_TAG, "Joined the fetch already running for " + locationSetting);
+            }
+        }
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (mLock) {
+                    mInFlight.remove(locationSetting);
+                }
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // SyncEngine.fetch reports failures in its result, so this is a bug.
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Called by the sync adapter around each sync, with the preferred location it syncs first.
+     */
+    void onSyncStarted(String preferredLocation) {
+        synchronized (mLock) {
+            mSyncingLocation = preferredLocation;
+        }
+    }
+
+    void onSyncFinished() {
+        synchronized (mLock) {
+            mSyncingLocation = null;
+        }
+    }
+
+    /**
+     * Syncs the new preferred location once it has stopped changing.  A sync still running for
+     * a previous location is cancelled straight away.  Must be called on the main thread.
+     *
+     * @param location the new location, as just written to the preferences.  It's passed in
+     * because the order preference listeners run in isn't defined, so
+     * {@link Utility#getPreferredLocation} may not have caught up yet.
+     */
+    public void requestLocationSync(final Context context, String location) {
+        boolean cancel;
+        synchronized (mLock) {
+            cancel = mSyncingLocation != null && !mSyncingLocation.equals(location);
+        }
+        if (cancel) {
+            Account account = SunshineSyncAdapter.getSyncAccount(context);
+            ContentResolver.cancelSync(account, context.getString(R.string.content_authority));
+        }
+
+        if (mPendingLocationSync != null) {
+            // The last edit never got its sync; this one will cover it.
+            mHandler.removeCallbacks(mPendingLocationSync);
+            synchronized (mLock) {
+                mCoalescedCount++;
+            }
+        }
+        final Context appContext = context.getApplicationContext();
+        mPendingLocationSync = new Runnable() {
+            @Override
+            public void run() {
+                mPendingLocationSync = null;
+                SunshineSyncAdapter.syncImmediately(appContext);
+            }
+        };
+        mHandler.postDelayed(mPendingLocationSync, LOCATION_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * @return how many fetches and sync requests were folded into another since the process
+     * started.
+     */
+    public int getCoalescedCount() {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+}
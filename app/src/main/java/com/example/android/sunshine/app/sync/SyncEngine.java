@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches and parses the forecasts of all saved locations concurrently from a
+ * {@link WeatherSource}.  Nothing is written to the database here; the caller commits the
+ * results once every fetch has finished.
+ *
+ * Connections time out rather than hang, and a fetch that fails in a way that might not happen
+ * again (a timeout, a reset connection, a 5xx) is retried after a jittered, exponentially
+ * growing delay.  A 4xx is final and isn't held against the server.  A server that keeps
+ * failing trips a {@link CircuitBreaker}, and isn't asked again until it has had time to
+ * recover.
+ */
+public class SyncEngine {
+    private static final String LOG_TAG = SyncEngine.class.getSimpleName();
+
+    // Upper bound on simultaneous connections, however many locations are saved.
+    static final int MAX_CONCURRENT_FETCHES = 4;
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 30 * 1000;
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_RETRY_BASE_DELAY_MILLIS = 2 * 1000;
+    static final long DEFAULT_RETRY_MAX_DELAY_MILLIS = 30 * 1000;
+
+    /**
+     * The outcome of fetching one location.
+     */
+    public static class LocationResult {
+        public final String locationSetting;
+        @SunshineSyncAdapter.LocationStatus
+        public int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        // Wall time from opening the first connection to the end of the parse, retries included.
+        public long latencyMillis;
+        // The stages of the last attempt: opening the connection, waiting from there for the
+        // response headers, and the bytes of the body read.
+        public long connectMillis;
+        public long firstByteMillis;
+        public long bytes;
+        // The part of the last attempt spent parsing.  The body is parsed as it arrives, so this
+        // includes reading all but the first bytes of it.
+        public long parseMillis;
+        // How many times the fetch was retried.
+        public int retries;
+        // True if no request was made because the server's circuit breaker is open.
+        public boolean circuitOpen;
+        // True if the server answered 304 and the stored forecast is still current.
+        public boolean notModified;
+        // Set only if the server returned a forecast that should be stored.
+        public ForecastJsonParser.Forecast forecast;
+        // Validators of the response, to be saved once the forecast has been stored.
+        public String etag;
+        public String lastModified;
+
+        // True if the fetch failed in a way worth retrying.
+        boolean retryable;
+        // True if the server refused the request itself, which says nothing about its health.
+        boolean clientError;
+
+        LocationResult(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+    }
+
+    private final Context mContext;
+    private final WeatherSource mSource;
+    private final Random mRandom = new Random();
+    private CircuitBreaker mCircuitBreaker;
+    private int mConnectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int mReadTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long mRetryBaseDelayMillis = DEFAULT_RETRY_BASE_DELAY_MILLIS;
+    private long mRetryMaxDelayMillis = DEFAULT_RETRY_MAX_DELAY_MILLIS;
+
+    public SyncEngine(Context context) {
+        this(context, new OpenWeatherMapSource());
+    }
+
+    /**
+     * Used by tests to point the engine at OpenWeatherMap's API on a local server.
+     */
+    SyncEngine(Context context, String baseUrl) {
+        this(context, new OpenWeatherMapSource(baseUrl));
+    }
+
+    public SyncEngine(Context context, WeatherSource source) {
+        mContext = context;
+        mSource = source;
+        mCircuitBreaker = new CircuitBreaker(context, source.getEndpoint());
+    }
+
+    void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @param maxAttempts how many times to try a fetch, the first attempt included.
+     * @param baseDelayMillis the delay before the first retry, which doubles for each one after.
+     * @param maxDelayMillis the longest delay between two attempts.
+     */
+    void setRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        mMaxAttempts = maxAttempts;
+        mRetryBaseDelayMillis = baseDelayMillis;
+        mRetryMaxDelayMillis = maxDelayMillis;
+    }
+
+    void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        mCircuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Returns the locations to sync: the preferred location first, followed by every location
+     * in the {@link SavedLocationStore}.
+     */
+    public static List<String> getSavedLocations(Context context) {
+        List<String> locations = new ArrayList<String>();
+        locations.add(Utility.getPreferredLocation(context));
+        for (String locationSetting : new SavedLocationStore(context).getAll()) {
+            if (!locations.contains(locationSetting)) {
+                locations.add(locationSetting);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Fetches every location on a bounded pool and waits for all of them, so the total time is
+     * that of the slowest location rather than the sum of all of them.
+     *
+     * @return one result per location, in the same order.
+     * @throws InterruptedException if the sync was cancelled while waiting.
+     */
+    public List<LocationResult> fetchAll(List<String> locations) throws InterruptedException {
+        List<LocationResult> results = new ArrayList<LocationResult>(locations.size());
+        if (locations.size() == 1) {
+            // No point in a pool for a single location.
+            results.add(fetchShared(locations.get(0)));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(locations.size(), MAX_CONCURRENT_FETCHES));
+        try {
+            List<Callable<LocationResult>> tasks =
+                    new ArrayList<Callable<LocationResult>>(locations.size());
+            for (final String location : locations) {
+                tasks.add(new Callable<LocationResult>() {
+                    @Override
+                    public LocationResult call() throws InterruptedException {
+                        return fetchShared(location);
+                    }
+                });
+            }
+            List<Future<LocationResult>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + locations.get(i), e.getCause());
+                    LocationResult failed = new LocationResult(locations.get(i));
+                    failed.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    results.add(failed);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Like {@link #fetch(String)}, but joins a fetch of the same location that another sync
+     * already has running rather than starting a second one.
+     */
+    LocationResult fetchShared(final String locationQuery) throws InterruptedException {
+        return SyncCoordinator.getInstance().fetch(locationQuery, new Callable<LocationResult>() {
+            @Override
+            public LocationResult call() {
+                return fetch(locationQuery);
+            }
+        });
+    }
+
+    /**
+     * Fetches and parses the forecast for a single location, retrying transient failures.  Never
+     * throws; failures are reported through {@link LocationResult#status}.
+     */
+    LocationResult fetch(String locationQuery) {
+        if (!mCircuitBreaker.allowRequest()) {
+            LocationResult result = new LocationResult(locationQuery);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            result.circuitOpen = true;
+            return result;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        LocationResult result;
+        int retries = 0;
+        while (true) {
+            result = fetchOnce(locationQuery);
+            if (!result.retryable || retries + 1 >= mMaxAttempts) {
+                break;
+            }
+            long delay = getRetryDelayMillis(retries);
+            Log.d(LOG_TAG, "Retrying " + locationQuery + " in " + delay + "ms");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                // The sync was cancelled; report the failure we have.
+                Thread.currentThread().interrupt();
+                break;
+            }
+            retries++;
+        }
+        result.retries = retries;
+        result.latencyMillis = SystemClock.elapsedRealtime() - start;
+
+        // Only a failure of the server itself counts against it, not a location it doesn't know
+        // or a request it won't take.
+        if (result.retryable) {
+            mCircuitBreaker.onFailure();
+        } else if (!result.clientError) {
+            mCircuitBreaker.onSuccess();
+        }
+        return result;
+    }
+
+    /**
+     * @return how long to wait before retry number {@code retry}, counting from 0: half of the
+     * capped exponential delay, plus a random part of the other half so that clients that
+     * failed together don't all retry together.
+     */
+    long getRetryDelayMillis(int retry) {
+        long delay = Math.min(mRetryBaseDelayMillis << Math.min(retry, 16), mRetryMaxDelayMillis);
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    /**
+     * Makes a single attempt at fetching a location.
+     */
+    private LocationResult fetchOnce(String locationQuery) {
+        LocationResult result = new LocationResult(locationQuery);
+
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+
+        try {
+            long connectStart = SystemClock.elapsedRealtime();
+            urlConnection = mSource.openConnection(locationQuery);
+            urlConnection.setConnectTimeout(mConnectTimeoutMillis);
+            urlConnection.setReadTimeout(mReadTimeoutMillis);
+
+            // If we already hold this forecast, ask the server to skip it when nothing changed.
+            // Without stored rows there's nothing a 304 could refer to, so always fetch.
+            if (hasStoredForecast(locationQuery)) {
+                new HttpValidatorStore(mContext).applyTo(urlConnection, locationQuery);
+            }
+            urlConnection.connect();
+            long connected = SystemClock.elapsedRealtime();
+            result.connectMillis = connected - connectStart;
+
+            int responseCode = urlConnection.getResponseCode();
+            result.firstByteMillis = SystemClock.elapsedRealtime() - connected;
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                result.notModified = true;
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return result;
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                Log.e(LOG_TAG, "Server error " + responseCode + " for " + locationQuery);
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                result.retryable = true;
+                return result;
+            } else if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // An unknown city or a bad API key: asking again won't change the answer.
+                Log.e(LOG_TAG, "Request refused with " + responseCode + " for " + locationQuery);
+                result.status = responseCode == HttpURLConnection.HTTP_NOT_FOUND
+                        ? SunshineSyncAdapter.LOCATION_STATUS_INVALID
+                        : SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                result.clientError = true;
+                return result;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                return result;
+            }
+            // Parse straight off the wire; the response is never buffered into a String.
+            ForecastJsonParser.Forecast forecast;
+            CountingInputStream counter = new CountingInputStream(inputStream);
+            long parseStart = SystemClock.elapsedRealtime();
+            try {
+                forecast = mSource.parse(new BufferedInputStream(counter));
+            } finally {
+                inputStream.close();
+                result.parseMillis = SystemClock.elapsedRealtime() - parseStart;
+                result.bytes = counter.getCount();
+            }
+
+            // do we have an error?
+            switch (forecast.code) {
+                case HttpURLConnection.HTTP_OK:
+                    result.forecast = forecast;
+                    result.etag = urlConnection.getHeaderField(HttpValidatorStore.HEADER_ETAG);
+                    result.lastModified =
+                            urlConnection.getHeaderField(HttpValidatorStore.HEADER_LAST_MODIFIED);
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+            result.retryable = true;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether we hold any forecast from today onwards for a location.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @return true if at least one day is stored.
+     */
+    private boolean hasStoredForecast(String locationSetting) {
+        Uri weatherUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = mContext.getContentResolver().query(weatherUri,
+                new String[]{WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean stored = cursor.moveToFirst();
+        cursor.close();
+        return stored;
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncLogEntry;
+
+import java.util.List;
+
+/**
+ * How long each stage of one sync took, saved as a row of the sync log so latency and traffic
+ * can be charted from the field.  The fetch stages are summed over every location.
+ */
+public class SyncStats {
+    private static final String LOG_TAG = SyncStats.class.getSimpleName();
+
+    public final long startTime;
+    private final long mStartElapsed;
+
+    public long durationMillis;
+    public int locations;
+    @SunshineSyncAdapter.LocationStatus
+    public int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+    public int retries;
+    public long connectMillis;
+    public long firstByteMillis;
+    public long parseMillis;
+    public long bytes;
+    // The whole batch, and the part of it spent deleting past days
+    public long writeMillis;
+    public long deleteMillis;
+    public long fanOutMillis;
+    public int rowsWritten;
+
+    public SyncStats() {
+        startTime = System.currentTimeMillis();
+        mStartElapsed = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Adds up the fetch stages of every location.
+     */
+    void addFetches(List<SyncEngine.LocationResult> results) {
+        for (SyncEngine.LocationResult result : results) {
+            locations++;
+            retries += result.retries;
+            connectMillis += result.connectMillis;
+            firstByteMillis += result.firstByteMillis;
+            parseMillis += result.parseMillis;
+            bytes += result.bytes;
+        }
+    }
+
+    /**
+     * Ends the sync's wall time.
+     */
+    void finish() {
+        durationMillis = SystemClock.elapsedRealtime() - mStartElapsed;
+    }
+
+    ContentValues toContentValues() {
+        ContentValues values = new ContentValues();
+        values.put(SyncLogEntry.COLUMN_START_TIME, startTime);
+        values.put(SyncLogEntry.COLUMN_DURATION, durationMillis);
+        values.put(SyncLogEntry.COLUMN_LOCATIONS, locations);
+        values.put(SyncLogEntry.COLUMN_STATUS, status);
+        values.put(SyncLogEntry.COLUMN_RETRIES, retries);
+        values.put(SyncLogEntry.COLUMN_CONNECT, connectMillis);
+        values.put(SyncLogEntry.COLUMN_FIRST_BYTE, firstByteMillis);
+        values.put(SyncLogEntry.COLUMN_PARSE, parseMillis);
+        values.put(SyncLogEntry.COLUMN_BYTES, bytes);
+        values.put(SyncLogEntry.COLUMN_WRITE, writeMillis);
+        values.put(SyncLogEntry.COLUMN_DELETE, deleteMillis);
+        values.put(SyncLogEntry.COLUMN_FAN_OUT, fanOutMillis);
+        values.put(SyncLogEntry.COLUMN_ROWS, rowsWritten);
+        return values;
+    }
+
+    /**
+     * Appends this run to the sync log.  The log is only diagnostics, so failing to write it
+     * doesn't fail the sync.
+     */
+    void save(Context context) {
+        try {
+            context.getContentResolver().insert(SyncLogEntry.CONTENT_URI, toContentValues());
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error saving sync log", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return locations + " locations in " + durationMillis + "ms: connect " + connectMillis
+                + "ms, first byte " + firstByteMillis + "ms, parse " + parseMillis + "ms ("
+                + bytes + " bytes, " + retries + " retries), write " + writeMillis + "ms ("
+                + rowsWritten + " rows, delete " + deleteMillis + "ms), fan-out "
+                + fanOutMillis + "ms";
+    }
+}
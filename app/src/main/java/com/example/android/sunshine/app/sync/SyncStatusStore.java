@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.List;
+
+/**
+ * Records the outcome of the last fetch for every synced location: its
+ * {@link SunshineSyncAdapter.LocationStatus}, how long it took, how often it was retried and when
+ * it happened.
+ */
+public class SyncStatusStore {
+
+    static final String PREFS_NAME = "location_sync_status";
+
+    private static final String KEY_STATUS = ".status";
+    private static final String KEY_LATENCY = ".latency";
+    private static final String KEY_RETRIES = ".retries";
+    private static final String KEY_TIME = ".time";
+
+    private final SharedPreferences mPrefs;
+
+    public SyncStatusStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Saves the results of one sync in a single write.  This function should not be called from
+     * the UI thread because it uses commit.
+     */
+    public void save(List<SyncEngine.LocationResult> results) {
+        long now = System.currentTimeMillis();
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (SyncEngine.LocationResult result : results) {
+            editor.putInt(result.locationSetting + KEY_STATUS, result.status);
+            editor.putLong(result.locationSetting + KEY_LATENCY, result.latencyMillis);
+            editor.putInt(result.locationSetting + KEY_RETRIES, result.retries);
+            editor.putLong(result.locationSetting + KEY_TIME, now);
+        }
+        editor.commit();
+    }
+}
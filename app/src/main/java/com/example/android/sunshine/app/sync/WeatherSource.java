@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * A server that daily forecasts are fetched from.  The {@link SyncEngine} owns the connection
+ * once it's open: it applies timeouts and validators, retries failures and reads the response,
+ * handing the body back to {@link #parse(InputStream)}.
+ */
+public interface WeatherSource {
+
+    /**
+     * @return the host, and port if any, that requests go to.  Failures are counted against it
+     * by the {@link CircuitBreaker}.
+     */
+    String getEndpoint();
+
+    /**
+     * Opens, but doesn't connect, a request for the forecast of a location.
+     *
+     * @param locationQuery The location string used to request updates from the server.
+     */
+    HttpURLConnection openConnection(String locationQuery) throws IOException;
+
+    /**
+     * Parses the body of a successful response.
+     */
+    ForecastJsonParser.Forecast parse(InputStream in) throws IOException, JSONException;
+}
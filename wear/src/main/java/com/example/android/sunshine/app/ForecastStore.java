@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+/**
+ * The last forecast the phone sent, kept on the watch so the face has weather to show as soon
+ * as it starts, before the data layer has delivered anything.  The icon itself is kept on disk
+ * by {@link IconLoader}; only its asset digest is stored here.
+ */
+public class ForecastStore {
+
+    private static final String PREFS_NAME = "last_forecast";
+
+    private static final String KEY_MIN_TEMP = "min";
+    private static final String KEY_MAX_TEMP = "max";
+    private static final String KEY_ICON_DIGEST = "icon_digest";
+    private static final String KEY_SAVED = "saved";
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Saves the forecast unless it is the one already stored, which is the usual case when the
+     * face reads the current data item on connect.  Written in the background, so it's safe to
+     * call on the main thread.
+     */
+    public void save(String minTemp, String maxTemp, String iconDigest) {
+        if (hasForecast() && TextUtils.equals(minTemp, getMinTemp())
+                && TextUtils.equals(maxTemp, getMaxTemp())
+                && TextUtils.equals(iconDigest, getIconDigest())) {
+            return;
+        }
+        mPrefs.edit()
+                .putString(KEY_MIN_TEMP, minTemp)
+                .putString(KEY_MAX_TEMP, maxTemp)
+                .putString(KEY_ICON_DIGEST, iconDigest)
+                .putLong(KEY_SAVED, System.currentTimeMillis())
+                .apply();
+    }
+
+    public boolean hasForecast() {
+        return mPrefs.contains(KEY_SAVED);
+    }
+
+    public String getMinTemp() {
+        return mPrefs.getString(KEY_MIN_TEMP, null);
+    }
+
+    public String getMaxTemp() {
+        return mPrefs.getString(KEY_MAX_TEMP, null);
+    }
+
+    /**
+     * @return the digest of the forecast's icon asset, to look it up with
+     * {@link IconLoader#loadStored(String)}, or null if it came without one.
+     */
+    public String getIconDigest() {
+        return mPrefs.getString(KEY_ICON_DIGEST, null);
+    }
+
+    /**
+     * @return the wall clock time the forecast was received, or 0 if there isn't one.
+     */
+    public long getSavedTime() {
+        return mPrefs.getLong(KEY_SAVED, 0);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+/**
+ * Counts the frames drawn in each clock hour, to show how often the face wakes the screen.
+ */
+public class FrameCounter {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private long mHourStart;
+    private int mFramesThisHour;
+    private int mFramesLastHour = -1;
+
+    /**
+     * @return true if this frame started a new hour, so the last one can be reported.
+     */
+    public boolean onFrame(long now) {
+        long hourStart = now - now % HOUR_MS;
+        boolean newHour = false;
+        if (hourStart != mHourStart) {
+            if (mHourStart != 0) {
+                // An hour without a single frame doesn't follow directly on the last one.
+                mFramesLastHour = hourStart - mHourStart == HOUR_MS ? mFramesThisHour : 0;
+                newHour = true;
+            }
+            mHourStart = hourStart;
+            mFramesThisHour = 0;
+        }
+        mFramesThisHour++;
+        return newHour;
+    }
+
+    /**
+     * @return the frames drawn in the last full hour, or -1 if the face hasn't been running
+     * for one yet.
+     */
+    public int getFramesLastHour() {
+        return mFramesLastHour;
+    }
+
+    public int getFramesThisHour() {
+        return mFramesThisHour;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads weather icons sent by the phone, for the watch face and the activity alike.
+ *
+ * Assets are fetched and decoded one at a time on a single worker thread, so updates are
+ * applied in the order they arrived, and decoded straight to the size the icon is drawn at.
+ * The results are cached by asset digest: the phone sends the same few icons over and over,
+ * and a condition that has been seen before is handed back without touching the data layer.
+ * The scaled icons are also written to disk, so they survive a restart of the watch.
+ *
+ * The loader connects its own GoogleApiClient, so it never connects or disconnects one that
+ * belongs to a caller.  It disconnects again once it has been idle for a while.
+ */
+public class IconLoader {
+
+    private static final String LOG_TAG = "IconLoader";
+
+    private static final long CONNECT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FETCH_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long IDLE_DISCONNECT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // There are only a dozen or so weather conditions.
+    private static final int MAX_CACHED_ICONS = 16;
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the icon, already at display size.  Not called if the
+         * icon couldn't be loaded, so whatever was shown before stays.
+         */
+        void onIconLoaded(Bitmap icon);
+    }
+
+    private static IconLoader sInstance;
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final int mIconSize;
+    private final File mStoreDir;
+    private final LruCache<String, Bitmap> mCache = new LruCache<>(MAX_CACHED_ICONS);
+    private final Handler mWorker;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Requests not yet delivered; only touched on the main thread.
+    private final ArrayList<Request> mPending = new ArrayList<>();
+
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            if (mGoogleApiClient.isConnected()) {
+                mGoogleApiClient.disconnect();
+            }
+        }
+    };
+
+    public static synchronized IconLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new IconLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private IconLoader(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        mIconSize = Math.round(context.getResources().getDimension(R.dimen.icon_size));
+        mStoreDir = new File(context.getFilesDir(), "icons");
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mWorker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * @return the icon for this asset at display size, if it has been loaded before.
+     */
+    public Bitmap getCached(Asset asset) {
+        String key = asset.getDigest();
+        return key == null ? null : mCache.get(key);
+    }
+
+    /**
+     * Loads the icon for this asset and hands it to {@code callback}, straight away if it is
+     * cached.  Either way, loads requested earlier for the same callback never arrive after it.
+     * Must be called on the main thread.
+     */
+    public void load(Asset asset, Callback callback) {
+        Bitmap cached = getCached(asset);
+        if (cached != null) {
+            // An older load still on its way for this caller must not overwrite the newer icon.
+            cancel(callback);
+            callback.onIconLoaded(cached);
+            return;
+        }
+        final Request request = new Request(asset, callback);
+        mPending.add(request);
+        mWorker.removeCallbacks(mDisconnect);
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap icon = fetch(request.asset);
+                mWorker.removeCallbacks(mDisconnect);
+                mWorker.postDelayed(mDisconnect, IDLE_DISCONNECT_MS);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Dropped if the caller cancelled while we were loading.
+                        if (mPending.remove(request) && icon != null) {
+                            request.callback.onIconLoaded(icon);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads the icon for this asset into the cache without delivering it anywhere, so it is
+     * ready when something next shows it.  May be called on any thread.
+     */
+    public void prefetch(final Asset asset) {
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                fetch(asset);
+                mWorker.removeCallbacks(mDisconnect);
+                mWorker.postDelayed(mDisconnect, IDLE_DISCONNECT_MS);
+            }
+        });
+    }
+
+    /**
+     * Reads an icon loaded earlier, possibly before the watch restarted, on the calling thread.
+     * The icons are small, so this is quick enough for the main thread when there's nothing to
+     * show until it returns.
+     *
+     * @return the icon at display size, or null if it was never loaded.
+     */
+    public Bitmap loadStored(String digest) {
+        if (digest == null) {
+            return null;
+        }
+        Bitmap icon = mCache.get(digest);
+        if (icon == null) {
+            icon = BitmapFactory.decodeFile(getStoreFile(digest).getPath());
+            if (icon != null) {
+                mCache.put(digest, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Drops any loads for {@code callback} that haven't been delivered yet, for callers that are
+     * going away.  Must be called on the main thread.
+     */
+    public void cancel(Callback callback) {
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            if (mPending.get(i).callback == callback) {
+                mPending.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Runs on the worker thread.
+     */
+    private Bitmap fetch(Asset asset) {
+        String key = asset.getDigest();
+        if (key != null) {
+            // An earlier request for the same asset may have loaded it while this one waited.
+            Bitmap cached = loadStored(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (!mGoogleApiClient.isConnected()) {
+            ConnectionResult result =
+                    mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (!result.isSuccess()) {
+                Log.w(LOG_TAG, "Unable to connect to GoogleAPIClient: " + result);
+                return null;
+            }
+        }
+
+        DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset)
+                .await(FETCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Bitmap icon;
+        try {
+            InputStream assetInputStream = result.getInputStream();
+            if (!result.getStatus().isSuccess() || assetInputStream == null) {
+                Log.w(LOG_TAG, "Requested an unknown Asset: " + result.getStatus());
+                return null;
+            }
+            icon = decode(readFully(assetInputStream));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading asset", e);
+            return null;
+        } finally {
+            result.release();
+        }
+        if (icon != null && key != null) {
+            mCache.put(key, icon);
+            store(key, icon);
+        }
+        return icon;
+    }
+
+    private File getStoreFile(String digest) {
+        return new File(mStoreDir, digest.replaceAll("[^A-Za-z0-9]", "_") + ".png");
+    }
+
+    /**
+     * Writes a scaled icon to disk, keeping only the most recently stored ones.  Runs on the
+     * worker thread.
+     */
+    private void store(String digest, Bitmap icon) {
+        if (!mStoreDir.isDirectory() && !mStoreDir.mkdirs()) {
+            Log.w(LOG_TAG, "Unable to create " + mStoreDir);
+            return;
+        }
+        File file = getStoreFile(digest);
+        File temp = new File(mStoreDir, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing icon", e);
+            temp.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        // Renamed into place, so a reader never sees half an icon.
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+
+        File[] files = mStoreDir.listFiles();
+        if (files != null && files.length > MAX_CACHED_ICONS) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    long l = lhs.lastModified();
+                    long r = rhs.lastModified();
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+            for (int i = 0; i < files.length - MAX_CACHED_ICONS; i++) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Decodes the icon no larger than it needs to be, then scales it to the size it's drawn at.
+     */
+    private Bitmap decode(byte[] data) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(LOG_TAG, "Asset is not an image");
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= mIconSize
+                && options.outHeight / (sampleSize * 2) >= mIconSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (decoded == null
+                || (decoded.getWidth() == mIconSize && decoded.getHeight() == mIconSize)) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, mIconSize, mIconSize, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class Request {
+        final Asset asset;
+        final Callback callback;
+
+        Request(Asset asset, Callback callback) {
+            this.asset = asset;
+            this.callback = callback;
+        }
+    }
+}
@@ -74,6 +74,12 @@ public class ListenerService extends WearableListenerService {
                     String maxTemp = dataMap.getString(MAX_TEMP);
                     Asset iconAsset = dataMap.getAsset(WEATHER_ICON);
 
+                    // Keep it for the next time the face starts, with the icon ready to draw
+                    new ForecastStore(this).save(minTemp, maxTemp,
+                            iconAsset != null ? iconAsset.getDigest() : null);
+                    if (iconAsset != null) {
+                        IconLoader.getInstance(this).prefetch(iconAsset);
+                    }
 
                     // Broadcast message to wearable activity for display
                     Intent dataIntent = new Intent();
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v4.content.LocalBroadcastManager;
 import android.support.wearable.view.WatchViewStub;
@@ -19,10 +18,8 @@ import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends Activity implements
         GoogleApiClient.ConnectionCallbacks,
@@ -31,8 +28,6 @@ public class MainActivity extends Activity implements
     private static final String LOG_TAG = "WEAR MainActivity";
 
 
-    private static final long TIMEOUT_MS = (3 * 60000);
-
     private static final String WEARABLE_DATA_PATH = "/wearable_data";
     private static final String MIN_TEMP = "min";
     private static final String MAX_TEMP = "max";
@@ -50,6 +45,19 @@ public class MainActivity extends Activity implements
     //Google API Client
     GoogleApiClient googleAPIClient;
 
+    private IconLoader mIconLoader;
+    private MessageReceiver mMessageReceiver;
+
+    private final IconLoader.Callback mIconCallback = new IconLoader.Callback() {
+        @Override
+        public void onIconLoaded(Bitmap icon) {
+            bitmap = icon;
+            if (mWeatherIcon != null) {
+                mWeatherIcon.setImageBitmap(bitmap);
+            }
+        }
+    };
+
     private final static IntentFilter INTENT_FILTER;
     static {
         INTENT_FILTER = new IntentFilter();
@@ -97,10 +105,12 @@ public class MainActivity extends Activity implements
             }
         });
 
+        mIconLoader = IconLoader.getInstance(this);
+
         // Register the local broadcast receiver
         IntentFilter messageFilter = new IntentFilter(Intent.ACTION_SEND);
-        MessageReceiver messageReceiver = new MessageReceiver();
-        LocalBroadcastManager.getInstance(this).registerReceiver(messageReceiver, messageFilter);
+        mMessageReceiver = new MessageReceiver();
+        LocalBroadcastManager.getInstance(this).registerReceiver(mMessageReceiver, messageFilter);
 
         Log.i("MainActivity", "Running the watch");
 
@@ -135,6 +145,8 @@ public class MainActivity extends Activity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(mMessageReceiver);
+        mIconLoader.cancel(mIconCallback);
         unregisterReceiver(mTimeInfoReceiver);
     }
 
@@ -164,52 +176,15 @@ public class MainActivity extends Activity implements
             String maxTemp = intent.getStringExtra(MAX_TEMP);
             Asset iconAsset = intent.getParcelableExtra(WEATHER_ICON);
 
-            //Requires a new thread to avoid blocking the UI
-            new LoadBitmapThread(iconAsset).start();
-
             Log.i("MainActivity", "Broadcast received on MAIN: " + minTemp + " " + maxTemp + " " + bitmap);
 
-            //Display received data in UI
+            //Display received data in UI; the icon follows once it's loaded
             mMinTemp.setText(minTemp);
             mMaxTemp.setText(maxTemp);
-            mWeatherIcon.setImageBitmap(bitmap);
-
-        }
-    }
-
-    /**
-     * Inner class to send  data object to all nodes currently connected to the data layer
-     * Runs on a new thread
-     */
-    class LoadBitmapThread extends Thread {
-        Asset asset;
-
-        // Constructor
-        LoadBitmapThread(Asset a) {
-            asset = a;
-        }
-
-        public void run() {
-            if (asset == null) {
-                throw new IllegalArgumentException("Asset must be non-null");
+            if (iconAsset != null) {
+                mIconLoader.load(iconAsset, mIconCallback);
             }
 
-            ConnectionResult result =
-                    googleAPIClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            if (!result.isSuccess()) {
-                Log.w(LOG_TAG, "Unable to connect to GoogleAPIClient");
-            }
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                    googleAPIClient, asset).await().getInputStream();
-            googleAPIClient.disconnect();
-
-            if (assetInputStream == null) {
-                Log.w(LOG_TAG, "Requested an unknown Asset.");
-            }
-            // decode the stream into a bitmap
-            Bitmap b =  BitmapFactory.decodeStream(assetInputStream);
-            bitmap = b;
         }
     }
 
@@ -22,15 +22,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -43,14 +38,16 @@ import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
 
 public class SunshineWatchFace extends CanvasWatchFaceService {
 
@@ -59,15 +56,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final Typeface NORMAL_TYPEFACE =
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
     private static final int MSG_UPDATE_TIME = 0;
 
-    private final String TIME_FORMAT_DISPLAYED = "kk:mm";
-    private final String DAY_FORMAT_DISPLAYED = "EEEE";
-    private final String DATE_FORMAT_DISPLAYED = "MMM dd yyyy";
-
     private GoogleApiClient googleApiClient;
-    private static final long TIMEOUT_MS = (3 * 60000);
 
     /**
      * Variables from OPENWeatherAPI
@@ -80,9 +71,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     //Sunshine object
     SunshineObj sunshineObj = new SunshineObj("", "", null);
     //Element values
-    private String mTime;
-    private String mDate;
-    private String mDay;
     private String mMinTemp;
     private String mMaxTemp;
     private Bitmap mBitmap;
@@ -126,97 +114,77 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         boolean mRegisteredTimeZoneReceiver = false;
         boolean mAmbient;
 
-        //Paint items
-        Paint backgroundPaint;
-        Paint timePaint;
-        Paint dayPaint;
-        Paint datePaint;
-        Paint minTempPaint;
-        Paint maxTempPaint;
-        Paint iconPaint;
-
-        //Dimension values;
-        float mXTime, mYTime, mXDay, mYDay, mXDate, mYDate, mXMax, mYMax, mXMin, mYMin, mXIcon, mYIcon;
-        //Size values;
-        float mTimeSize, mDaySize, mDateSize, mMaxSize, mMinSize, mIconSize;
-
-        //Offset values
-        float mXOffset;
-        float mYOffsetTime;
-        float mYOffsetDate;
+        //Draws the face; everything it needs is prepared outside onDraw
+        WatchFaceRenderer mRenderer;
+        boolean mIsRound;
+        boolean mBenchmarked;
+        final FrameCounter mFrameCounter = new FrameCounter();
+        IconLoader mIconLoader;
 
-        //Watch Face Items
-        Bitmap mBackgroundBitmap;
-
-        int mTapCount;
+        private final IconLoader.Callback mIconCallback = new IconLoader.Callback() {
+            @Override
+            public void onIconLoaded(Bitmap icon) {
+                mBitmap = icon;
+                sunshineObj.setIcon(mBitmap);
+                mRenderer.setIcon(icon);
+                invalidate();
+            }
+        };
 
         private BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
 
-                mTime = new SimpleDateFormat(TIME_FORMAT_DISPLAYED)
-                        .format(Calendar.getInstance().getTime());
-
-                mDay = new SimpleDateFormat(DAY_FORMAT_DISPLAYED)
-                        .format(Calendar.getInstance().getTime());
-
-                mDate = new SimpleDateFormat(DATE_FORMAT_DISPLAYED)
-                        .format(Calendar.getInstance().getTime());
-
-                mMinTemp = intent.getStringExtra(MIN_TEMP);
-                mMaxTemp = intent.getStringExtra(MAX_TEMP);
                 Asset iconAsset = intent.getParcelableExtra(WEATHER_ICON);
-
-                //Requires a new thread to avoid blocking the UI
-                new LoadBitmapThread(iconAsset).start();
+                setForecast(intent.getStringExtra(MIN_TEMP), intent.getStringExtra(MAX_TEMP),
+                        iconAsset);
 
                 Log.i(LOG_TAG, "##Broadcast received on watch: " + mMinTemp + " " + mMaxTemp + " " + mBitmap);
             }
         };
 
         /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
+         * Picks up the forecast the phone has already put in the data layer, which
+         * onDataChanged only reports when it changes.
          */
-        boolean mLowBitAmbient;
+        private final ResultCallback<DataItemBuffer> mDataItemsCallback =
+                new ResultCallback<DataItemBuffer>() {
+            @Override
+            public void onResult(DataItemBuffer dataItems) {
+                try {
+                    if (!dataItems.getStatus().isSuccess() || dataItems.getCount() == 0) {
+                        return;
+                    }
+                    DataItem item = dataItems.get(0);
+                    DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
+                    Asset iconAsset = dataMap.getAsset(WEATHER_ICON);
+                    String minTemp = dataMap.getString(MIN_TEMP);
+                    String maxTemp = dataMap.getString(MAX_TEMP);
+                    new ForecastStore(SunshineWatchFace.this).save(minTemp, maxTemp,
+                            iconAsset != null ? iconAsset.getDigest() : null);
+                    setForecast(minTemp, maxTemp, iconAsset);
+                } finally {
+                    dataItems.release();
+                }
+            }
+        };
 
+        private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // Either the time shown or the moment it next changes has moved.
+                mRenderer.onTimeZoneChanged();
+                invalidate();
+                updateTimer();
+            }
+        };
 
         /**
-         * Inner class to send  data object to all nodes currently connected to the data layer
-         * Runs on a new thread
+         * Whether the display supports fewer bits for each color in ambient mode. When true, we
+         * disable anti-aliasing in ambient mode.
          */
-        class LoadBitmapThread extends Thread {
-            Asset asset;
-
-            // Constructor
-            LoadBitmapThread(Asset a) {
-                asset = a;
-            }
-
-            public void run() {
-                if (asset == null) {
-                    throw new IllegalArgumentException("Asset must be non-null");
-                }
-
-                ConnectionResult result =
-                        googleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                if (!result.isSuccess()) {
-                    Log.w(LOG_TAG, "Unable to connect to GoogleAPIClient");
-                }
-                // convert asset into a file descriptor and block until it's ready
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                        googleApiClient, asset).await().getInputStream();
-                googleApiClient.disconnect();
+        boolean mLowBitAmbient;
 
-                if (assetInputStream == null) {
-                    Log.w(LOG_TAG, "Requested an unknown Asset.");
-                }
-                // decode the stream into a bitmap
-                Bitmap b =  BitmapFactory.decodeStream(assetInputStream);
-                mBitmap = b;
-                sunshineObj.setIcon(mBitmap);
-            }
-        }
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -238,73 +206,44 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .addOnConnectionFailedListener(this)
                     .build();
 
+            mRenderer = new WatchFaceRenderer(resources);
+            mIconLoader = IconLoader.getInstance(SunshineWatchFace.this);
+
+            // Show the last forecast we had straight away; the data layer catches up on connect.
+            ForecastStore store = new ForecastStore(SunshineWatchFace.this);
+            if (store.hasForecast()) {
+                mMinTemp = store.getMinTemp();
+                mMaxTemp = store.getMaxTemp();
+                mRenderer.setWeather(mMinTemp, mMaxTemp);
+                Bitmap icon = mIconLoader.loadStored(store.getIconDigest());
+                if (icon != null) {
+                    mIconCallback.onIconLoaded(icon);
+                }
+            }
+
             //Register the broadcast receiver
             registerReceiver();
 
-            setUpPaintItems(resources);
-
             Log.d(LOG_TAG, "Created the watch face engine");
 
         }
 
 
-        private void setUpPaintItems(Resources resources){
-
-            //Paint
-            timePaint = new Paint();
-            dayPaint = new Paint();
-            datePaint = new Paint();
-            minTempPaint = new Paint();
-            maxTempPaint = new Paint();
-            iconPaint = new Paint();
-
-            //Sizes
-            mTimeSize = resources.getDimension(R.dimen.time_text_size);
-            mDaySize = resources.getDimension(R.dimen.day_text_size);
-            mDateSize = resources.getDimension(R.dimen.date_text_size);
-            mMaxSize = resources.getDimension(R.dimen.max_temp_text_size);
-            mMinSize = resources.getDimension(R.dimen.min_temp_text_size);
-            mIconSize = resources.getDimension(R.dimen.icon_size);
-
-            int white = resources.getColor(R.color.white);
-
-            //Configure Paint item size
-            timePaint.setTextSize(mTimeSize);
-            timePaint.setColor(white);
-            timePaint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-            timePaint.setAntiAlias(true);
-
-            dayPaint.setTextSize(mDaySize);
-            dayPaint.setAntiAlias(true);
-            dayPaint.setColor(white);
-            dayPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-
-            datePaint.setTextSize(mDateSize);
-            datePaint.setAntiAlias(true);
-            datePaint.setColor(white);
-            datePaint.setTypeface(Typeface.create("sans-serif-thin", Typeface.NORMAL));
-
-            maxTempPaint.setTextSize(mMaxSize);
-            maxTempPaint.setColor(white);
-            maxTempPaint.setAntiAlias(true);
-
-            minTempPaint.setTextSize(mMinSize);
-            minTempPaint.setColor(Color.parseColor("#FFCA28"));
-            minTempPaint.setTypeface(Typeface.create("sans-serif-light", Typeface.NORMAL));
-            minTempPaint.setAntiAlias(true);
-
-            // Load the background image
-            backgroundPaint = new Paint();
-            backgroundPaint.setColor(resources.getColor(R.color.background));
-            Drawable backgroundDrawable = resources.getDrawable(R.drawable.background, null);
-            mBackgroundBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
-
+        private void setForecast(String minTemp, String maxTemp, Asset iconAsset) {
+            mMinTemp = minTemp;
+            mMaxTemp = maxTemp;
+            mRenderer.setWeather(mMinTemp, mMaxTemp);
+            invalidate();
+            if (iconAsset != null) {
+                mIconLoader.load(iconAsset, mIconCallback);
+            }
         }
 
-
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mIconLoader.cancel(mIconCallback);
+            mRenderer.release();
             super.onDestroy();
         }
 
@@ -324,6 +263,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             } else {
                 unregisterReceiver();
                 releaseGoogleApiClient();
+                Log.d(LOG_TAG, "Render cost while visible: " + mRenderer.getStats());
+                mRenderer.resetStats();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -340,6 +281,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
             IntentFilter filter = new IntentFilter(Intent.ACTION_SEND);
             LocalBroadcastManager.getInstance(SunshineWatchFace.this).registerReceiver(broadcastReceiver, filter);
+            // The time zone may have changed while we weren't listening.
+            mRenderer.onTimeZoneChanged();
+            IntentFilter timeFilter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            timeFilter.addAction(Intent.ACTION_TIME_CHANGED);
+            SunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, timeFilter);
 
             Log.d(LOG_TAG, "Registered the broadcast receiver");
         }
@@ -350,6 +296,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             LocalBroadcastManager.getInstance(SunshineWatchFace.this).unregisterReceiver(broadcastReceiver);
+            SunshineWatchFace.this.unregisterReceiver(mTimeZoneReceiver);
         }
 
         @Override
@@ -357,46 +304,25 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-
-            int shift_x = resources.getInteger(R.integer.square_shift_x);
-            int shift_y = resources.getInteger(R.integer.square_shift_y);
-
-            if(isRound){
-                mXTime = resources.getDimension(R.dimen.time_x);
-                mYTime = resources.getDimension(R.dimen.time_y);
-                mXDay = resources.getDimension(R.dimen.day_x);
-                mYDay = resources.getDimension(R.dimen.day_y);
-                mXDate = resources.getDimension(R.dimen.date_x);
-                mYDate = resources.getDimension(R.dimen.date_y);
-                mXIcon = resources.getDimension(R.dimen.icon_x);
-                mYIcon = resources.getDimension(R.dimen.icon_y);
-                mXMax = resources.getDimension(R.dimen.max_temp_x);
-                mYMax = resources.getDimension(R.dimen.max_temp_y);
-                mXMin = resources.getDimension(R.dimen.min_temp_x);
-                mYMin = resources.getDimension(R.dimen.min_temp_y);
-            }else{
-                mXTime = resources.getInteger(R.integer.time_x) + shift_x;
-                mYTime = resources.getInteger(R.integer.time_y) + shift_y;
-                mXDay = resources.getInteger(R.integer.day_x) + shift_x;
-                mYDay = resources.getInteger(R.integer.day_y) + shift_y + 10;
-                mXDate = resources.getInteger(R.integer.date_x) + shift_x;
-                mYDate = resources.getInteger(R.integer.date_y) + shift_y + 20;
-                mXIcon = resources.getInteger(R.integer.icon_x) + shift_x;
-                mYIcon = resources.getInteger(R.integer.icon_y) + shift_y + 30;
-                mXMax = resources.getInteger(R.integer.max_temp_x) + shift_x + 15;
-                mYMax = resources.getInteger(R.integer.max_temp_y) + shift_y + 40;
-                mXMin = resources.getInteger(R.integer.min_temp_x) + shift_x + 15;
-                mYMin = resources.getInteger(R.integer.min_temp_y) + shift_y + 50;
-            }
+            mIsRound = insets.isRound();
+            mRenderer.setLayout(mIsRound);
+        }
 
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mRenderer.setSize(width, height);
+            if (!mBenchmarked && WatchFaceBenchmark.isEnabled()) {
+                mBenchmarked = true;
+                WatchFaceBenchmark.run(getResources(), mIsRound, width, height);
+            }
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setAmbient(mAmbient, mLowBitAmbient);
         }
 
         @Override
@@ -410,9 +336,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    timePaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
 
@@ -427,7 +351,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
-            Resources resources = SunshineWatchFace.this.getResources();
             switch (tapType) {
                 case TAP_TYPE_TOUCH:
                     // The user has started touching the screen.
@@ -437,9 +360,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    mTapCount++;
-                    backgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
-                            R.color.background : R.color.background2));
+                    mRenderer.toggleBackground();
                     break;
             }
             invalidate();
@@ -447,73 +368,23 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-
-            int height = canvas.getHeight();
-            int width = canvas.getWidth();
-
-            Log.d(LOG_TAG, "Height: " + height + " Width: " + width);
-
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.WHITE);
-            } else {
-                //canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
-                mBackgroundBitmap = scaleBitmap(mBackgroundBitmap, 320, 320);
-                backgroundPaint.setAntiAlias(true);
-                backgroundPaint.setColor(Color.parseColor("#26A69A"));
-                canvas.drawRect(0, 0, width, height, backgroundPaint);
-                //canvas.drawBitmap(mBackgroundBitmap, 5, 5, backgroundPaint);
-            }
-
-            //Draw rectangle
-            Paint myPaint = new Paint();
-            myPaint.setColor(Color.parseColor("#C2185B"));
-            canvas.drawRect(0, (height / 3) * 2, width, width, myPaint);
-
-            //Draw elements
-            if(mTime != null){
-                canvas.drawText(mTime, mXTime, mYTime, timePaint);
-            }
-
-            if(mDay != null){
-                canvas.drawText(mDay.toUpperCase(), mXDay, mYDay, dayPaint);
-            }
-
-            if(mDate != null){
-                canvas.drawText(mDate, mXDate, mYDate, datePaint);
-            }
-
-            if(mMinTemp != null){
-                canvas.drawText(mMinTemp, mXMin, mYMin, minTempPaint);
-            }
-
-            if(mMaxTemp != null){
-                canvas.drawText(mMaxTemp, mXMax, mYMax, maxTempPaint);
-            }
-
-            if(mBitmap != null){
-                //Resize Bitmap
-                int size = Math.round(mIconSize);
-                mBitmap= scaleBitmap(mBitmap, size, size);
-                canvas.drawBitmap(mBitmap, mXIcon, mYIcon, iconPaint);
+            long now = System.currentTimeMillis();
+            mRenderer.draw(canvas, now);
+            if (mFrameCounter.onFrame(now)) {
+                Log.d(LOG_TAG, mFrameCounter.getFramesLastHour() + " frames drawn last hour");
             }
         }
 
-
-        private Bitmap scaleBitmap(Bitmap bitmap, int wantedWidth, int wantedHeight) {
-
-            Bitmap output = Bitmap.createBitmap(wantedWidth, wantedHeight, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(output);
-            Matrix m = new Matrix();
-            m.setScale((float) wantedWidth / bitmap.getWidth(), (float) wantedHeight / bitmap.getHeight());
-            canvas.drawBitmap(bitmap, m, new Paint());
-
-            return output;
+        /**
+         * @return the frames drawn in the last full hour, or -1 if the face hasn't been running
+         * for one yet.
+         */
+        public int getFramesPerHour() {
+            return mFrameCounter.getFramesLastHour();
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
+         * Restarts the {@link #mUpdateTimeHandler} timer, redrawing now, if it should be running
          * or stops it if it shouldn't be running but currently is.
          */
         private void updateTimer() {
@@ -532,14 +403,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Redraws in interactive mode and sleeps until the face next changes.  The face only
+         * shows minutes, so that's the next minute boundary; new weather, taps and ambient
+         * switches redraw straight away on their own.  In ambient mode the system wakes us
+         * once a minute through {@link #onTimeTick()} instead.
          */
         private void handleUpdateTimeMessage() {
             invalidate();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long delayMs = mRenderer.getNextChangeTime(timeMs) - timeMs;
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
@@ -547,6 +420,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onConnected(Bundle bundle) {
             Log.d(LOG_TAG, "Connected to GoogleAPI");
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WEARABLE_DATA_PATH)
+                    .build();
+            Wearable.DataApi.getDataItems(googleApiClient, uri).setResultCallback(mDataItemsCallback);
         }
 
         @Override
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Measures the frame time and allocations of the watch face by drawing it off screen, with
+ * the frames one second apart as the old interactive timer drew them, both from the cached
+ * layers and composing every frame from scratch.  Results are logged.
+ *
+ * The engine runs it once when it gets its surface, if enabled with
+ * {@code adb shell setprop log.tag.WatchFaceBenchmark DEBUG}.
+ */
+public class WatchFaceBenchmark {
+
+    public static final String LOG_TAG = "WatchFaceBenchmark";
+
+    private static final int WARMUP_FRAMES = 60;
+    private static final int BENCHMARK_FRAMES = 600;
+    private static final long FRAME_INTERVAL_MS = 1000;
+
+    public static boolean isEnabled() {
+        return Log.isLoggable(LOG_TAG, Log.DEBUG);
+    }
+
+    public static void run(Resources resources, boolean isRound, int width, int height) {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(resources);
+        renderer.setLayout(isRound);
+        renderer.setSize(width, height);
+        renderer.setWeather(resources.getString(R.string.test_temp2),
+                resources.getString(R.string.test_temp1));
+        renderer.setIcon(renderer.scaleIcon(
+                BitmapFactory.decodeResource(resources, R.mipmap.ic_launcher)));
+
+        Bitmap target = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        measure(renderer, canvas, "interactive", true);
+        measure(renderer, canvas, "interactive, uncached", false);
+        renderer.setAmbient(true, false);
+        measure(renderer, canvas, "ambient", true);
+        measure(renderer, canvas, "ambient, uncached", false);
+        renderer.release();
+        target.recycle();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void measure(WatchFaceRenderer renderer, Canvas canvas, String mode,
+            boolean cached) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            renderer.draw(canvas, now);
+            now += FRAME_INTERVAL_MS;
+        }
+
+        System.gc();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        renderer.resetStats();
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            if (!cached) {
+                renderer.invalidateLayers();
+            }
+            renderer.draw(canvas, now);
+            now += FRAME_INTERVAL_MS;
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        // The only allocations left are the strings formatted when the minute changes.
+        Log.d(LOG_TAG, mode + ": " + BENCHMARK_FRAMES + " frames, "
+                + elapsed / BENCHMARK_FRAMES / 1000 + " us per frame, "
+                + Debug.getThreadAllocCount() + " allocations ("
+                + Debug.getThreadAllocSize() + " bytes) over "
+                + BENCHMARK_FRAMES * FRAME_INTERVAL_MS / 60000 + " minute changes; "
+                + renderer.getStats());
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face.  Paints, positions, the scaled icon and the formatted strings
+ * are all prepared when the weather, the size or the minute changes, so {@link #draw} itself
+ * allocates nothing.
+ *
+ * Everything but the time changes at most once a day or once a sync, so it is composed into a
+ * cached layer, one for interactive and one for ambient mode.  A frame copies the layer and
+ * draws the time on top; the layer is only composed again when the weather, the date, the size
+ * or the background color changes.
+ */
+public class WatchFaceRenderer {
+
+    private static final String TIME_FORMAT_DISPLAYED = "kk:mm";
+    private static final String DAY_FORMAT_DISPLAYED = "EEEE";
+    private static final String DATE_FORMAT_DISPLAYED = "MMM dd yyyy";
+
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+
+    private final Resources mResources;
+
+    //Paint items
+    private final Paint mBackgroundPaint = new Paint();
+    private final Paint mBandPaint = new Paint();
+    private final Paint mTimePaint = new Paint();
+    private final Paint mDayPaint = new Paint();
+    private final Paint mDatePaint = new Paint();
+    private final Paint mMaxTempPaint = new Paint();
+    private final Paint mMinTempPaint = new Paint();
+    private final Paint mIconPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final int mIconSize;
+
+    //Dimension values
+    private float mXTime, mYTime, mXDay, mYDay, mXDate, mYDate, mXMax, mYMax, mXMin, mYMin, mXIcon, mYIcon;
+    private int mWidth;
+    private int mHeight;
+    private float mBandTop;
+
+    //Time values, formatted once a minute
+    private final SimpleDateFormat mTimeFormat;
+    private final SimpleDateFormat mDayFormat;
+    private final SimpleDateFormat mDateFormat;
+    private final Date mNow = new Date();
+    private long mFormattedUntil;
+    private long mFormattedFrom;
+    private String mTime;
+    private String mDay;
+    private String mDate;
+
+    //Weather values
+    private String mMinTemp;
+    private String mMaxTemp;
+    private Bitmap mIcon;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mAlternateBackground;
+
+    //Cached layers of everything but the time, by mode
+    private final Bitmap[] mLayers = new Bitmap[2];
+    private final boolean[] mLayerValid = new boolean[2];
+    private final Canvas mLayerCanvas = new Canvas();
+
+    //Render cost, since the last resetStats
+    private int mFrames;
+    private long mFrameNanos;
+    private int mLayerBuilds;
+    private long mLayerNanos;
+
+    public WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mIconSize = Math.round(resources.getDimension(R.dimen.icon_size));
+
+        Locale locale = Locale.getDefault();
+        mTimeFormat = new SimpleDateFormat(TIME_FORMAT_DISPLAYED, locale);
+        mDayFormat = new SimpleDateFormat(DAY_FORMAT_DISPLAYED, locale);
+        mDateFormat = new SimpleDateFormat(DATE_FORMAT_DISPLAYED, locale);
+
+        int white = resources.getColor(R.color.white);
+        Typeface light = Typeface.create("sans-serif-light", Typeface.NORMAL);
+
+        mTimePaint.setTextSize(resources.getDimension(R.dimen.time_text_size));
+        mTimePaint.setColor(white);
+        mTimePaint.setTypeface(light);
+
+        mDayPaint.setTextSize(resources.getDimension(R.dimen.day_text_size));
+        mDayPaint.setColor(white);
+        mDayPaint.setTypeface(light);
+
+        mDatePaint.setTextSize(resources.getDimension(R.dimen.date_text_size));
+        mDatePaint.setColor(white);
+        mDatePaint.setTypeface(Typeface.create("sans-serif-thin", Typeface.NORMAL));
+
+        mMaxTempPaint.setTextSize(resources.getDimension(R.dimen.max_temp_text_size));
+        mMaxTempPaint.setColor(white);
+
+        mMinTempPaint.setTextSize(resources.getDimension(R.dimen.min_temp_text_size));
+        mMinTempPaint.setColor(resources.getColor(R.color.min_temp));
+        mMinTempPaint.setTypeface(light);
+
+        mBandPaint.setColor(resources.getColor(R.color.face_band));
+
+        updatePaints();
+    }
+
+    /**
+     * Places the elements for a round or a square screen.
+     */
+    public void setLayout(boolean isRound) {
+        Resources resources = mResources;
+        if (isRound) {
+            mXTime = resources.getDimension(R.dimen.time_x);
+            mYTime = resources.getDimension(R.dimen.time_y);
+            mXDay = resources.getDimension(R.dimen.day_x);
+            mYDay = resources.getDimension(R.dimen.day_y);
+            mXDate = resources.getDimension(R.dimen.date_x);
+            mYDate = resources.getDimension(R.dimen.date_y);
+            mXIcon = resources.getDimension(R.dimen.icon_x);
+            mYIcon = resources.getDimension(R.dimen.icon_y);
+            mXMax = resources.getDimension(R.dimen.max_temp_x);
+            mYMax = resources.getDimension(R.dimen.max_temp_y);
+            mXMin = resources.getDimension(R.dimen.min_temp_x);
+            mYMin = resources.getDimension(R.dimen.min_temp_y);
+        } else {
+            int shift_x = resources.getInteger(R.integer.square_shift_x);
+            int shift_y = resources.getInteger(R.integer.square_shift_y);
+            mXTime = resources.getInteger(R.integer.time_x) + shift_x;
+            mYTime = resources.getInteger(R.integer.time_y) + shift_y;
+            mXDay = resources.getInteger(R.integer.day_x) + shift_x;
+            mYDay = resources.getInteger(R.integer.day_y) + shift_y + 10;
+            mXDate = resources.getInteger(R.integer.date_x) + shift_x;
+            mYDate = resources.getInteger(R.integer.date_y) + shift_y + 20;
+            mXIcon = resources.getInteger(R.integer.icon_x) + shift_x;
+            mYIcon = resources.getInteger(R.integer.icon_y) + shift_y + 30;
+            mXMax = resources.getInteger(R.integer.max_temp_x) + shift_x + 15;
+            mYMax = resources.getInteger(R.integer.max_temp_y) + shift_y + 40;
+            mXMin = resources.getInteger(R.integer.min_temp_x) + shift_x + 15;
+            mYMin = resources.getInteger(R.integer.min_temp_y) + shift_y + 50;
+        }
+        invalidateLayers();
+    }
+
+    public void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        mBandTop = (height / 3) * 2;
+        release();
+    }
+
+    public void setWeather(String minTemp, String maxTemp) {
+        mMinTemp = minTemp;
+        mMaxTemp = maxTemp;
+        invalidateLayers();
+    }
+
+    /**
+     * @param icon an icon already at display size, from {@link IconLoader} or
+     * {@link #scaleIcon(Bitmap)}.  It may be shared, so it is never recycled here.
+     */
+    public void setIcon(Bitmap icon) {
+        mIcon = icon;
+        invalidateLayers();
+    }
+
+    /**
+     * Scales a decoded icon to the size it's drawn at.  Safe to call from any thread.
+     */
+    public Bitmap scaleIcon(Bitmap icon) {
+        if (icon == null || (icon.getWidth() == mIconSize && icon.getHeight() == mIconSize)) {
+            return icon;
+        }
+        return Bitmap.createScaledBitmap(icon, mIconSize, mIconSize, true);
+    }
+
+    public void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        if (lowBitAmbient != mLowBitAmbient) {
+            mLayerValid[LAYER_AMBIENT] = false;
+        }
+        mAmbient = ambient;
+        mLowBitAmbient = lowBitAmbient;
+        updatePaints();
+    }
+
+    /**
+     * Switches the interactive background between its two colors.
+     */
+    public void toggleBackground() {
+        mAlternateBackground = !mAlternateBackground;
+        mLayerValid[LAYER_INTERACTIVE] = false;
+        updatePaints();
+    }
+
+    /**
+     * Makes the next frame of each mode compose its layer again.
+     */
+    public void invalidateLayers() {
+        mLayerValid[LAYER_INTERACTIVE] = false;
+        mLayerValid[LAYER_AMBIENT] = false;
+    }
+
+    /**
+     * Makes the next frame format the time again, in the new default time zone.
+     */
+    public void onTimeZoneChanged() {
+        TimeZone timeZone = TimeZone.getDefault();
+        mTimeFormat.setTimeZone(timeZone);
+        mDayFormat.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        mFormattedUntil = 0;
+    }
+
+    private void updatePaints() {
+        // Low bit ambient screens can't show the shades anti-aliasing needs.
+        boolean antiAlias = !(mAmbient && mLowBitAmbient);
+        mTimePaint.setAntiAlias(antiAlias);
+        mDayPaint.setAntiAlias(antiAlias);
+        mDatePaint.setAntiAlias(antiAlias);
+        mMaxTempPaint.setAntiAlias(antiAlias);
+        mMinTempPaint.setAntiAlias(antiAlias);
+        mMinTempPaint.setColor(mAmbient ? Color.WHITE : mResources.getColor(R.color.min_temp));
+        mBackgroundPaint.setColor(mAmbient ? Color.BLACK : mResources.getColor(
+                mAlternateBackground ? R.color.background : R.color.face_background));
+    }
+
+    /**
+     * Formats the time, day and date if the minute has changed since they were last formatted.
+     */
+    private void updateTime(long now) {
+        if (now >= mFormattedFrom && now < mFormattedUntil) {
+            return;
+        }
+        mNow.setTime(now);
+        mTime = mTimeFormat.format(mNow);
+        String day = mDayFormat.format(mNow).toUpperCase(Locale.getDefault());
+        String date = mDateFormat.format(mNow);
+        if (!day.equals(mDay) || !date.equals(mDate)) {
+            mDay = day;
+            mDate = date;
+            invalidateLayers();
+        }
+        // Time zones are whole minutes away from UTC, so minutes start at the same instant in all.
+        mFormattedFrom = now - now % MINUTE_MS;
+        mFormattedUntil = mFormattedFrom + MINUTE_MS;
+    }
+
+    /**
+     * @return the wall clock time at which the face next looks different, if nothing but the
+     * clock changes: the start of the next minute.  Midnight is a minute boundary too, so the
+     * date rolls over with it.
+     */
+    public long getNextChangeTime(long now) {
+        return now - now % MINUTE_MS + MINUTE_MS;
+    }
+
+    public void draw(Canvas canvas, long now) {
+        long start = System.nanoTime();
+        updateTime(now);
+
+        int mode = mAmbient ? LAYER_AMBIENT : LAYER_INTERACTIVE;
+        if (!mLayerValid[mode]) {
+            composeLayer(mode);
+        }
+        canvas.drawBitmap(mLayers[mode], 0, 0, null);
+        canvas.drawText(mTime, mXTime, mYTime, mTimePaint);
+
+        mFrames++;
+        mFrameNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Draws everything but the time into the layer of the current mode.
+     */
+    private void composeLayer(int mode) {
+        long start = System.nanoTime();
+        if (mLayers[mode] == null) {
+            mLayers[mode] = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        }
+        Canvas canvas = mLayerCanvas;
+        canvas.setBitmap(mLayers[mode]);
+
+        // Ambient mode keeps the screen mostly black, without the band and the icon.
+        canvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+        if (!mAmbient) {
+            canvas.drawRect(0, mBandTop, mWidth, mWidth, mBandPaint);
+        }
+
+        canvas.drawText(mDay, mXDay, mYDay, mDayPaint);
+        canvas.drawText(mDate, mXDate, mYDate, mDatePaint);
+
+        if (mMinTemp != null) {
+            canvas.drawText(mMinTemp, mXMin, mYMin, mMinTempPaint);
+        }
+        if (mMaxTemp != null) {
+            canvas.drawText(mMaxTemp, mXMax, mYMax, mMaxTempPaint);
+        }
+        if (mIcon != null && !mAmbient) {
+            canvas.drawBitmap(mIcon, mXIcon, mYIcon, mIconPaint);
+        }
+
+        canvas.setBitmap(null);
+        mLayerValid[mode] = true;
+        mLayerBuilds++;
+        mLayerNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * @return how many frames were drawn and layers composed since the last reset, and what
+     * they cost on average.
+     */
+    public String getStats() {
+        return mFrames + " frames at " + (mFrames == 0 ? 0 : mFrameNanos / mFrames / 1000)
+                + " us, " + mLayerBuilds + " layers composed at "
+                + (mLayerBuilds == 0 ? 0 : mLayerNanos / mLayerBuilds / 1000) + " us";
+    }
+
+    public void resetStats() {
+        mFrames = 0;
+        mFrameNanos = 0;
+        mLayerBuilds = 0;
+        mLayerNanos = 0;
+    }
+
+    /**
+     * Frees the cached layers.
+     */
+    public void release() {
+        for (int i = 0; i < mLayers.length; i++) {
+            if (mLayers[i] != null) {
+                mLayers[i].recycle();
+                mLayers[i] = null;
+            }
+        }
+        invalidateLayers();
+    }
+}